@@ -0,0 +1,166 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.CompilationContext;
+import codegen.CodeFragment;
+import codegen.arch.sparc.SparcOptimizer;
+import codegen.arch.sparc.SparcSelect;
+import optimize.Lifetime;
+import regalloc.Allocator;
+import translate.IRFragment;
+
+/**
+ * Benchmarks for instruction selection, the optimizer, the (linear scan)
+ * register allocator, and the write phase.
+ * 
+ * Every benchmark processes the fragments one by one (in a single thread),
+ * like the phases do with -Djobs=1.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackEndBenchmark {
+    /**
+     * Translated (and linearized) programs
+     */
+    @State(Scope.Thread)
+    public static class Translated {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.Translate);
+        }
+    }
+
+    /**
+     * Programs after instruction selection, with the temp lifetimes analyzed
+     * (fresh for every invocation, since the optimizer rewrites the code)
+     */
+    @State(Scope.Thread)
+    public static class Selected {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.CodeGen);
+
+            for (final CompilationContext ctx : contexts) {
+                ctx.run(() -> {
+                    for (final CodeFragment frag : ctx.getCodeFragments()) {
+                        frag.lifetimes = Lifetime.analyze(frag);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Optimized programs (fresh for every invocation, since the register
+     * allocator inserts spill code)
+     */
+    @State(Scope.Thread)
+    public static class Optimized {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.Optimize);
+        }
+    }
+
+    /**
+     * Programs ready to be written (writing doesn't change them)
+     */
+    @State(Scope.Thread)
+    public static class Allocated {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs
+         */
+        @Setup(Level.Trial)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.RegAlloc);
+        }
+    }
+
+    /**
+     * Instruction selection (SparcSelect.munch) of every fragment
+     */
+    @Benchmark
+    public void select(final Translated translated, final Blackhole bh) {
+        for (final CompilationContext ctx : translated.contexts) {
+            ctx.run(() -> {
+                for (final IRFragment frag : ctx.getIRFragments()) {
+                    bh.consume(SparcSelect.munch(frag));
+                }
+            });
+        }
+    }
+
+    /**
+     * Optimizer (SparcOptimizer) on every fragment
+     */
+    @Benchmark
+    public void optimize(final Selected selected, final Blackhole bh) {
+        for (final CompilationContext ctx : selected.contexts) {
+            ctx.run(() -> {
+                for (final CodeFragment frag : ctx.getCodeFragments()) {
+                    bh.consume(SparcOptimizer.optimize(frag));
+                }
+            });
+        }
+    }
+
+    /**
+     * Linear scan register allocation (Allocator.assign) of every fragment
+     */
+    @Benchmark
+    public void allocate(final Optimized optimized, final Blackhole bh) {
+        for (final CompilationContext ctx : optimized.contexts) {
+            ctx.run(() -> {
+                for (final CodeFragment frag : ctx.getCodeFragments()) {
+                    bh.consume(Allocator.assign(frag));
+                }
+            });
+        }
+    }
+
+    /**
+     * Write phase (assembly file output)
+     */
+    @Benchmark
+    public void write(final Allocated allocated, final Blackhole bh) {
+        for (final CompilationContext ctx : allocated.contexts) {
+            ctx.run(() -> bh.consume(write.Phase.execute(ctx)));
+        }
+    }
+}
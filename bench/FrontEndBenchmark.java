@@ -0,0 +1,146 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.CompilationContext;
+import check.DefUseVisitor;
+import check.SemanticsVisitor;
+import check.SymbolTable;
+import check.SymbolTableVisitor;
+
+/**
+ * Benchmarks for the parse and check phases
+ * (the check phase also as its three separate passes)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    /**
+     * Parsed programs (the AST is never modified, so it is shared by all invocations)
+     */
+    @State(Scope.Thread)
+    public static class Parsed {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs
+         */
+        @Setup(Level.Trial)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.Parse);
+        }
+    }
+
+    /**
+     * Parsed programs, with the symbol table built (fresh for every invocation,
+     * since the semantic checks add to it)
+     */
+    @State(Scope.Thread)
+    public static class Declared {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Parsed parsed) {
+            contexts = parsed.contexts;
+
+            for (final CompilationContext ctx : contexts) {
+                ctx.run(() -> {
+                    ctx.setSymbolTable(new SymbolTable());
+                    ctx.getAstRoot().accept(new SymbolTableVisitor());
+                    ctx.getSymbolTable().resetScope();
+                });
+            }
+        }
+    }
+
+    /**
+     * Parsed programs, with the symbol table built and the semantics checked
+     */
+    @State(Scope.Thread)
+    public static class Checked {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.Check);
+        }
+    }
+
+    /**
+     * Parse phase (scanning/parsing to AST)
+     */
+    @Benchmark
+    public void parse(final Workload workload, final Blackhole bh) {
+        for (final String file : workload.getFiles()) {
+            final CompilationContext ctx = new CompilationContext(file);
+            ctx.run(() -> bh.consume(parse.Phase.execute(ctx)));
+            bh.consume(ctx.getAstRoot());
+        }
+    }
+
+    /**
+     * Check phase (all passes)
+     */
+    @Benchmark
+    public void check(final Parsed parsed, final Blackhole bh) {
+        for (final CompilationContext ctx : parsed.contexts) {
+            ctx.run(() -> bh.consume(check.Phase.execute(ctx)));
+        }
+    }
+
+    /**
+     * Symbol table pass of the check phase
+     */
+    @Benchmark
+    public void symbolTable(final Parsed parsed, final Blackhole bh) {
+        for (final CompilationContext ctx : parsed.contexts) {
+            ctx.run(() -> {
+                ctx.setSymbolTable(new SymbolTable());
+                bh.consume(ctx.getAstRoot().accept(new SymbolTableVisitor()));
+            });
+        }
+    }
+
+    /**
+     * Semantics pass of the check phase
+     */
+    @Benchmark
+    public void semantics(final Declared declared, final Blackhole bh) {
+        for (final CompilationContext ctx : declared.contexts) {
+            ctx.run(() -> bh.consume(ctx.getAstRoot().accept(new SemanticsVisitor())));
+        }
+    }
+
+    /**
+     * Def-use pass of the check phase
+     */
+    @Benchmark
+    public void defUse(final Checked checked, final Blackhole bh) {
+        for (final CompilationContext ctx : checked.contexts) {
+            ctx.run(() -> bh.consume(ctx.getAstRoot().accept(new DefUseVisitor())));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package bench;
+
+import java.util.Random;
+
+/**
+ * Generator for large MiniJava programs (benchmark/stress test input).
+ * 
+ * The classes form inheritance chains, and methods use the fields and call
+ * the methods of their ancestors, so symbol lookups have to walk up the
+ * class hierarchy. Every method mixes arithmetic on locals/formals, field and
+ * array accesses, loops, branches and calls.
+ * 
+ * The programs are valid (they pass the check phase), and have no recursion
+ * or unbounded loops (methods only call methods declared before them). The
+ * same options (and seed) always give the same program.
+ * 
+ * Run from the command line to write a program to standard output, with the
+ * options as system properties (see main):
+ * 
+ *     java -Dclasses=100 -Dmethods=20 bench.Synthetic > Big.java
+ */
+public final class Synthetic {
+    // Size of the array field of every class
+    private static final int sc_arraySize = 10;
+    // Number of iterations of every loop
+    private static final int sc_loopCount = 10;
+
+    // Number of classes (besides the main class)
+    private final int m_classes;
+    // Inheritance depth (number of ancestors of the most derived classes)
+    private final int m_depth;
+    // Number of methods per class
+    private final int m_methods;
+    // Number of statements per method
+    private final int m_statements;
+    // Maximum depth of expressions (zero for only variables/literals)
+    private final int m_exprDepth;
+    // Number of (integer) locals per method
+    private final int m_locals;
+    // Random numbers for picking statements/expressions
+    private final Random m_random;
+
+    // Program being generated
+    private final StringBuilder m_sb = new StringBuilder();
+    // Class whose method is being generated
+    private int m_class = 0;
+    // Method being generated
+    private int m_method = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param classes    Number of classes (besides the main class)
+     * @param depth      Inheritance depth
+     * @param methods    Number of methods per class
+     * @param statements Number of statements per method
+     * @param exprDepth  Maximum depth of expressions
+     * @param locals     Number of locals per method
+     * @param seed       Random seed
+     */
+    public Synthetic(final int classes, final int depth, final int methods,
+            final int statements, final int exprDepth, final int locals, final long seed) {
+        m_classes = Math.max(1, classes);
+        m_depth = Math.max(0, depth);
+        m_methods = Math.max(1, methods);
+        m_statements = Math.max(0, statements);
+        m_exprDepth = Math.max(0, exprDepth);
+        m_locals = Math.max(1, locals);
+        m_random = new Random(seed);
+    }
+
+    /**
+     * Generate program with the options given as system properties
+     * (classes, depth, methods, statements, exprDepth, locals, seed)
+     * and write it to standard output
+     */
+    public static void main(final String[] args) {
+        final Synthetic gen = new Synthetic(
+                Integer.getInteger("classes", 10),
+                Integer.getInteger("depth", 3),
+                Integer.getInteger("methods", 10),
+                Integer.getInteger("statements", 30),
+                Integer.getInteger("exprDepth", 3),
+                Integer.getInteger("locals", 8),
+                Long.getLong("seed", 0));
+
+        System.out.print(gen.generate());
+    }
+
+    /**
+     * Generate program
+     * 
+     * @return Source code
+     */
+    public String generate() {
+        m_sb.setLength(0);
+
+        // Start from the last method of the last class, which (indirectly)
+        // calls most of the others
+        final int last = m_classes - 1;
+        line(0, "class Main {");
+        line(1, "public static void main(String[] a) {");
+        line(2, "System.out.println(new C%d().m%d_%d(1, 2));", last, last, m_methods - 1);
+        line(1, "}");
+        line(0, "}");
+
+        for (m_class = 0; m_class < m_classes; m_class++) {
+            generateClass();
+        }
+
+        return m_sb.toString();
+    }
+
+    /**
+     * Generate class declaration
+     */
+    private void generateClass() {
+        m_sb.append('\n');
+
+        if (getBase(m_class) >= 0) {
+            line(0, "class C%d extends C%d {", m_class, getBase(m_class));
+        } else {
+            line(0, "class C%d {", m_class);
+        }
+
+        // Field names are unique in the whole program (no hiding)
+        line(1, "int f%d;", m_class);
+        line(1, "int[] arr%d;", m_class);
+
+        for (m_method = 0; m_method < m_methods; m_method++) {
+            generateMethod();
+        }
+
+        line(0, "}");
+    }
+
+    /**
+     * Generate method declaration
+     */
+    private void generateMethod() {
+        m_sb.append('\n');
+        line(1, "public int m%d_%d(int p, int q) {", m_class, m_method);
+
+        // Loop counter, then the other locals
+        line(2, "int i;");
+        for (int i = 0; i < m_locals; i++) {
+            line(2, "int v%d;", i);
+        }
+
+        // Everything is initialized before use (see DefUseVisitor)
+        line(2, "arr%d = new int[%d];", m_class, sc_arraySize);
+        line(2, "i = 0;");
+        for (int i = 0; i < m_locals; i++) {
+            line(2, "v%d = %s;", i, i % 2 == 0 ? "p" : "q");
+        }
+
+        for (int i = 0; i < m_statements; i++) {
+            generateStatement();
+        }
+
+        line(2, "return %s;", expression(m_exprDepth));
+        line(1, "}");
+    }
+
+    /**
+     * Generate statement
+     */
+    private void generateStatement() {
+        switch (m_random.nextInt(8)) {
+            case 0:
+            case 1:
+            case 2:
+                simpleStatement(2);
+                break;
+            case 3:
+                line(2, "if (%s)", condition());
+                simpleStatement(3);
+                line(2, "else");
+                simpleStatement(3);
+                break;
+            case 4:
+                line(2, "i = 0;");
+                line(2, "while (i < %d) {", sc_loopCount);
+                simpleStatement(3);
+                simpleStatement(3);
+                line(3, "i = i + 1;");
+                line(2, "}");
+                break;
+            case 5:
+                line(2, "System.out.println(%s);", expression(m_exprDepth));
+                break;
+            default:
+                line(2, "arr%d[%d] = %s;", m_class, m_random.nextInt(sc_arraySize),
+                        expression(m_exprDepth));
+                break;
+        }
+    }
+
+    /**
+     * Generate assignment to a local or field
+     * 
+     * @param indent Indentation level
+     */
+    private void simpleStatement(final int indent) {
+        if (m_random.nextInt(4) == 0) {
+            line(indent, "f%d = %s;", randomAncestor(), expression(m_exprDepth));
+        } else {
+            line(indent, "v%d = %s;", m_random.nextInt(m_locals), expression(m_exprDepth));
+        }
+    }
+
+    /**
+     * Generate boolean expression
+     */
+    private String condition() {
+        final String lt = String.format("(%s < %s)", expression(m_exprDepth - 1),
+                expression(m_exprDepth - 1));
+
+        if (m_random.nextBoolean()) {
+            return lt;
+        }
+
+        return String.format("(%s && !(%s < %s))", lt, leaf(), leaf());
+    }
+
+    /**
+     * Generate integer expression
+     * 
+     * @param depth Maximum depth
+     */
+    private String expression(final int depth) {
+        if (depth <= 0) {
+            return leaf();
+        }
+
+        // Operators have no precedence, and the left operand can't be an array
+        // lookup or call (see scanner.jj), so everything is parenthesized
+        switch (m_random.nextInt(6)) {
+            case 0:
+                return String.format("(%s + %s)", expression(depth - 1), expression(depth - 1));
+            case 1:
+                return String.format("(%s - %s)", expression(depth - 1), leaf());
+            case 2:
+                return String.format("(%s * %s)", leaf(), expression(depth - 1));
+            case 3:
+                return call(depth);
+            default:
+                return leaf();
+        }
+    }
+
+    /**
+     * Generate call to an earlier method (of this class or an ancestor)
+     * 
+     * @param depth Maximum depth
+     */
+    private String call(final int depth) {
+        final int cls = randomAncestor();
+        final int count = cls == m_class ? m_method : m_methods;
+
+        // First method of the root class can't call anything
+        if (count == 0) {
+            return leaf();
+        }
+
+        return String.format("(this.m%d_%d(%s, %s))", cls, m_random.nextInt(count),
+                expression(depth - 1), leaf());
+    }
+
+    /**
+     * Generate variable, literal, field or array access
+     */
+    private String leaf() {
+        switch (m_random.nextInt(7)) {
+            case 0:
+                return "p";
+            case 1:
+                return "q";
+            case 2:
+                return Integer.toString(m_random.nextInt(100));
+            case 3:
+                return String.format("f%d", randomAncestor());
+            case 4:
+                return String.format("(arr%d[%d])", m_class, m_random.nextInt(sc_arraySize));
+            default:
+                return String.format("v%d", m_random.nextInt(m_locals));
+        }
+    }
+
+    /**
+     * Pick the current class or one of its ancestors
+     */
+    private int randomAncestor() {
+        int cls = m_class;
+
+        while (getBase(cls) >= 0 && m_random.nextBoolean()) {
+            cls = getBase(cls);
+        }
+
+        return cls;
+    }
+
+    /**
+     * Get base class of a class
+     * 
+     * @param cls Class number
+     * @return Base class number (-1 if none)
+     */
+    private int getBase(final int cls) {
+        return cls % (m_depth + 1) != 0 ? cls - 1 : -1;
+    }
+
+    /**
+     * Write a line of code
+     * 
+     * @param indent Indentation level
+     * @param fmt    Line (format string)
+     * @param args   Format arguments
+     */
+    private void line(final int indent, final String fmt, final Object... args) {
+        for (int i = 0; i < indent; i++) {
+            m_sb.append("    ");
+        }
+
+        m_sb.append(String.format(fmt, args)).append('\n');
+    }
+}
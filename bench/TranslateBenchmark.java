@@ -0,0 +1,104 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.CompilationContext;
+import translate.IRFragment;
+
+/**
+ * Benchmarks for the translate phase (with and without canonicalization),
+ * and for canonicalization by itself
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslateBenchmark {
+    /**
+     * Checked programs (fresh for every invocation, since translation
+     * updates the symbol table)
+     */
+    @State(Scope.Thread)
+    public static class Checked {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.Check);
+        }
+    }
+
+    /**
+     * Translated programs, before canonicalization
+     */
+    @State(Scope.Thread)
+    public static class Translated {
+        // Compilation of each program
+        public List<CompilationContext> contexts;
+        // Tree-form IR fragments of each program
+        public List<List<IRFragment>> fragments;
+
+        /**
+         * Prepare the programs (before every invocation)
+         */
+        @Setup(Level.Invocation)
+        public void setup(final Workload workload) {
+            contexts = workload.prepare(Workload.Stage.Check);
+            fragments = new ArrayList<>(contexts.size());
+
+            for (final CompilationContext ctx : contexts) {
+                // Take the fragments before the phase linearizes them
+                final List<IRFragment> frags = new ArrayList<>();
+                fragments.add(frags);
+
+                ctx.run(() -> {
+                    ctx.setIRFragmentSink(frags::add);
+                    translate.Phase.execute(ctx);
+                    ctx.setIRFragmentSink(null);
+                });
+            }
+        }
+    }
+
+    /**
+     * Translate phase (AST to IR, and canonicalization)
+     */
+    @Benchmark
+    public void translate(final Checked checked, final Blackhole bh) {
+        for (final CompilationContext ctx : checked.contexts) {
+            ctx.run(() -> bh.consume(translate.Phase.execute(ctx)));
+        }
+    }
+
+    /**
+     * Canonicalization (canon.Main.transform) of every fragment
+     */
+    @Benchmark
+    public void canonicalize(final Translated translated, final Blackhole bh) {
+        for (int i = 0; i < translated.contexts.size(); i++) {
+            final CompilationContext ctx = translated.contexts.get(i);
+
+            for (final IRFragment frag : translated.fragments.get(i)) {
+                ctx.run(() -> translate.Phase.linearize(ctx, frag));
+                bh.consume(frag.linear);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.*;
+
+import main.CompilationContext;
+import main.Config;
+import main.Logger;
+
+/**
+ * Source programs compiled by the benchmarks.
+ * 
+ * "tests" is the test case corpus (tests/*.java and Test.java, minus any
+ * which do not compile), and "synthetic" is one large generated program
+ * (see Synthetic, its size can be changed with the other parameters, e.g.
+ * "-p classes=100"). The benchmarks are run from the compiler directory, or
+ * -Dbench.root can be set to point to it.
+ */
+@State(Scope.Benchmark)
+public class Workload {
+    /**
+     * Compiler phases, in order (for preparing the input of a phase)
+     */
+    public enum Stage {
+        None, Parse, Check, Translate, CodeGen, Optimize, RegAlloc
+    }
+
+    // Program(s) to compile
+    @Param({ "tests", "synthetic" })
+    public String input;
+
+    // Synthetic program options (see Synthetic)
+    @Param({ "20" })
+    public int classes;
+    @Param({ "3" })
+    public int depth;
+    @Param({ "20" })
+    public int methods;
+    @Param({ "30" })
+    public int statements;
+    @Param({ "3" })
+    public int exprDepth;
+    @Param({ "8" })
+    public int locals;
+
+    // Source files of the program(s)
+    private final List<String> m_files = new ArrayList<>();
+    // Directory for generated sources and assembly
+    private Path m_tempDir = null;
+
+    /**
+     * Find (or generate) the source files
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Config.initialize();
+        m_tempDir = Files.createTempDirectory("mjc-bench");
+
+        switch (input) {
+            case "tests":
+                addTestCases(System.getProperty("bench.root", "."));
+                break;
+            case "synthetic":
+                final Path file = m_tempDir.resolve("Synthetic.java");
+                final Synthetic gen = new Synthetic(classes, depth, methods, statements,
+                        exprDepth, locals, 0);
+                Files.write(file, gen.generate().getBytes("US-ASCII"));
+                m_files.add(file.toString());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown benchmark input: " + input);
+        }
+    }
+
+    /**
+     * Delete generated files
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (final File file : m_tempDir.toFile().listFiles()) {
+            file.delete();
+        }
+
+        Files.deleteIfExists(m_tempDir);
+    }
+
+    /**
+     * Add the test cases which compile without errors
+     * 
+     * @param root Compiler directory
+     */
+    private void addTestCases(final String root) throws IOException {
+        final List<File> files = new ArrayList<>();
+        files.add(new File(root, "Test.java"));
+
+        final File[] tests = new File(root, "tests").listFiles((dir, name) -> name.endsWith(".java"));
+        if (tests == null) {
+            throw new IOException("Test cases not found (set -Dbench.root): " + root);
+        }
+
+        Arrays.sort(tests);
+        files.addAll(Arrays.asList(tests));
+
+        for (final File file : files) {
+            // Copy into the temp directory, so the assembly is written there
+            final Path copy = m_tempDir.resolve(file.getName());
+            Files.copy(file.toPath(), copy);
+
+            final CompilationContext ctx = prepare(copy.toString(), Stage.RegAlloc);
+            if (ctx != null) {
+                m_files.add(copy.toString());
+            }
+        }
+    }
+
+    /**
+     * Access the source files
+     */
+    public List<String> getFiles() {
+        return m_files;
+    }
+
+    /**
+     * Run the phases up to (and including) a stage on every source file,
+     * each in a new compilation context
+     * 
+     * @param last Last stage to run
+     * @return Compilation contexts
+     */
+    public List<CompilationContext> prepare(final Stage last) {
+        final List<CompilationContext> contexts = new ArrayList<>(m_files.size());
+
+        for (final String file : m_files) {
+            final CompilationContext ctx = prepare(file, last);
+
+            if (ctx == null) {
+                throw new IllegalStateException("Benchmark input does not compile: " + file);
+            }
+
+            contexts.add(ctx);
+        }
+
+        return contexts;
+    }
+
+    /**
+     * Run the phases up to (and including) a stage on a source file,
+     * in a new compilation context
+     * 
+     * @param file Source file
+     * @param last Last stage to run
+     * @return Compilation context (null if error)
+     */
+    private static CompilationContext prepare(final String file, final Stage last) {
+        final CompilationContext ctx = new CompilationContext(file);
+        final boolean[] success = { true };
+
+        ctx.run(() -> {
+            Logger.begin();
+
+            for (final Stage stage : Stage.values()) {
+                if (stage.compareTo(last) > 0 || !success[0]) {
+                    break;
+                }
+
+                success[0] = run(ctx, stage) && !Logger.isError();
+            }
+        });
+
+        return success[0] ? ctx : null;
+    }
+
+    /**
+     * Run one stage of the compiler
+     * 
+     * @param ctx   Compilation context
+     * @param stage Stage
+     * @return Success
+     */
+    private static boolean run(final CompilationContext ctx, final Stage stage) {
+        switch (stage) {
+            case Parse:
+                return parse.Phase.execute(ctx);
+            case Check:
+                return check.Phase.execute(ctx);
+            case Translate:
+                return translate.Phase.execute(ctx);
+            case CodeGen:
+                return codegen.Phase.execute(ctx);
+            case Optimize:
+                return optimize.Phase.execute(ctx);
+            case RegAlloc:
+                return regalloc.Phase.execute(ctx);
+            case None:
+            default:
+                return true;
+        }
+    }
+}
@@ -9,6 +9,9 @@ package check;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 import main.Arch;
 import main.Logger;
@@ -21,8 +24,23 @@ public final class ClassSymbol extends BaseSymbol {
     public ClassSymbol base;
     // Class fields
     public ArrayList<VarSymbol> fields = new ArrayList<>();
-    // Class methods
-    public HashMap<String, MethodSymbol> methods = new HashMap<>();
+    // Class methods (in declaration order)
+    public LinkedHashMap<String, MethodSymbol> methods = new LinkedHashMap<>();
+
+    // Field symbols by name, including base class fields (see computeLayout)
+    private HashMap<String, VarSymbol> m_fieldMap = null;
+    // Field offsets by name, including base class fields (see computeLayout)
+    private HashMap<String, Integer> m_fieldOffsets = null;
+    // Object size, in bytes (see computeLayout)
+    private int m_byteSize = -1;
+    // Names of methods overridden by some derived class (see addOverrides)
+    private final HashSet<String> m_overridden = new HashSet<>();
+    // Whether some class in this hierarchy overrides a method (root class only)
+    private boolean m_dispatch = false;
+    // Virtual method table, by slot (see computeLayout)
+    private ArrayList<MethodSymbol> m_vtable = null;
+    // Virtual method table slots by method name (see computeLayout)
+    private HashMap<String, Integer> m_vtableSlots = null;
 
     public ClassSymbol(final String name, final ClassSymbol base) {
         super(name);
@@ -33,15 +51,97 @@ public final class ClassSymbol extends BaseSymbol {
         this(name, null);
     }
 
+    /**
+     * Mark the methods of base classes which this class overrides.
+     * This must happen for every class before any layout is computed, since
+     * the whole hierarchy decides whether objects need a vtable pointer.
+     */
+    void addOverrides() {
+        for (final String name : methods.keySet()) {
+            for (ClassSymbol iter = base; iter != null; iter = iter.base) {
+                if (iter.getMethod(name) != null) {
+                    iter.m_overridden.add(name);
+                    getRoot().m_dispatch = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the final object layout (field offsets, size, and vtable) of this
+     * class and its base classes. This must happen after the base class is
+     * known (see SemanticsVisitor), and it is only done once.
+     * 
+     * Objects only begin with a vtable pointer if some class in the hierarchy
+     * overrides a method, so classes without dynamic dispatch keep their
+     * original layout.
+     */
+    public void computeLayout() {
+        if (m_fieldOffsets != null) {
+            return;
+        }
+
+        final HashMap<String, VarSymbol> fieldMap = new HashMap<>();
+        final HashMap<String, Integer> fieldOffsets = new HashMap<>();
+        final ArrayList<MethodSymbol> vtable = new ArrayList<>();
+        final HashMap<String, Integer> vtableSlots = new HashMap<>();
+        final int wordSize = Arch.get().getWordSize();
+        int size = 0;
+
+        // Base class fields (and methods) come first in the object
+        if (base != null) {
+            base.computeLayout();
+            fieldMap.putAll(base.m_fieldMap);
+            fieldOffsets.putAll(base.m_fieldOffsets);
+            size = base.m_byteSize;
+
+            if (base.m_vtable != null) {
+                vtable.addAll(base.m_vtable);
+                vtableSlots.putAll(base.m_vtableSlots);
+            }
+        }
+        // Root class holds the vtable pointer
+        else if (m_dispatch) {
+            size = wordSize;
+        }
+
+        // Object fields are pointers, so each field is one word.
+        // Fields of this class hide base class fields with the same name.
+        for (int i = fields.size() - 1; i >= 0; i--) {
+            final VarSymbol sym = fields.get(i);
+            fieldMap.put(sym.name, sym);
+            fieldOffsets.put(sym.name, size + i * wordSize);
+        }
+
+        // Methods of this class replace base class methods in the vtable,
+        // and new methods get the next slot
+        if (getRoot().m_dispatch) {
+            for (final MethodSymbol sym : methods.values()) {
+                final Integer slot = vtableSlots.get(sym.name);
+
+                if (slot != null) {
+                    vtable.set(slot, sym);
+                } else {
+                    vtableSlots.put(sym.name, vtable.size());
+                    vtable.add(sym);
+                }
+            }
+
+            m_vtable = vtable;
+            m_vtableSlots = vtableSlots;
+        }
+
+        m_fieldMap = fieldMap;
+        m_fieldOffsets = fieldOffsets;
+        m_byteSize = size + fields.size() * wordSize;
+    }
+
     /**
      * Get class size, in bytes
      */
     public int byteSize() {
-        // Sum up class fields
-        // Object fields are pointers, so each field is one word
-        final int mySize = Arch.get().getWordSize() * fields.size();
-        // Add base class size if applicable
-        return base != null ? base.byteSize() + mySize : mySize;
+        computeLayout();
+        return m_byteSize;
     }
 
     /**
@@ -65,7 +165,12 @@ public final class ClassSymbol extends BaseSymbol {
      * @param name Variable name
      */
     public VarSymbol getVar(final String name) {
-        // Linear search here is bad, but I didn't want to have both a HashMap and List
+        // Use the layout if it has been computed
+        if (m_fieldMap != null) {
+            return m_fieldMap.get(name);
+        }
+
+        // Otherwise (base class may not be known yet), search the fields
         for (final VarSymbol sym : fields) {
             if (sym.name.equals(name)) {
                 return sym;
@@ -88,18 +193,11 @@ public final class ClassSymbol extends BaseSymbol {
      * @return Offset into object
      */
     public int getVarOffset(final String name) {
-        // Linear search here is bad, but I didn't want to have both a HashMap and List
-        for (int i = 0; i < fields.size(); i++) {
-            if (fields.get(i).name.equals(name)) {
-                final int offset = i * Arch.get().getWordSize();
-                // Convert "this-class-relative" offset to "object-relative" offset
-                return base != null ? base.byteSize() + offset : offset;
-            }
-        }
+        computeLayout();
 
-        // Not found, try base class?
-        if (base != null) {
-            return base.getVarOffset(name);
+        final Integer offset = m_fieldOffsets.get(name);
+        if (offset != null) {
+            return offset;
         }
 
         // Sorry...
@@ -122,4 +220,65 @@ public final class ClassSymbol extends BaseSymbol {
 
         return sym;
     }
+
+    /**
+     * Get root class of this class' hierarchy
+     */
+    public ClassSymbol getRoot() {
+        ClassSymbol iter = this;
+        while (iter.base != null) {
+            iter = iter.base;
+        }
+
+        return iter;
+    }
+
+    /**
+     * Check whether a method of this class is overridden by some derived class
+     * (calls through this type need dynamic dispatch)
+     * 
+     * @param name Method name
+     */
+    public boolean isOverridden(final String name) {
+        return m_overridden.contains(name);
+    }
+
+    /**
+     * Check whether objects of this class have a vtable
+     */
+    public boolean hasVtable() {
+        computeLayout();
+        return m_vtable != null;
+    }
+
+    /**
+     * Get virtual method table (methods by slot)
+     * 
+     * @return Methods (null if there is no vtable)
+     */
+    public List<MethodSymbol> getVtable() {
+        computeLayout();
+        return m_vtable;
+    }
+
+    /**
+     * Get vtable slot of class method (base class methods allowed)
+     * 
+     * @param name Method name
+     * @return Slot index (-1 if there is no such slot)
+     */
+    public int getVtableSlot(final String name) {
+        computeLayout();
+
+        final Integer slot = m_vtableSlots != null ? m_vtableSlots.get(name) : null;
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Get label of this class' vtable
+     * ("$$" can't appear in method labels, see Util.concatNames)
+     */
+    public String getVtableLabel() {
+        return "vtable$$" + name;
+    }
 }
@@ -7,6 +7,7 @@
 
 package check;
 
+import main.CompilationContext;
 import main.Logger;
 
 import syntax.Program;
@@ -15,33 +16,31 @@ import syntax.Program;
  * Wrapper for check phase of compiler
  */
 public final class Phase {
-    // Symbol table for program
-    private static SymbolTable s_symbolTable;
-
     /**
      * Clear phase state, in case the phase is being ran again
      */
-    private static void initialize() {
+    private static void initialize(final CompilationContext ctx) {
         Logger.registerPhase("Check");
-        s_symbolTable = new SymbolTable();
+        ctx.setSymbolTable(new SymbolTable());
     }
 
     /**
      * Perform check phase of compiler.
      * Build symbol table, and perform semantic checks
      * 
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute() {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
-        initialize();
+        initialize(ctx);
 
         // Root program AST node
-        final Program root = parse.Phase.getAstRoot();
+        final Program root = ctx.getAstRoot();
 
         // Build symbol table
         root.accept(new SymbolTableVisitor());
-        s_symbolTable.resetScope();
+        ctx.getSymbolTable().resetScope();
 
         // Symbol table error(s)
         if (Logger.isError()) {
@@ -58,6 +57,9 @@ public final class Phase {
             return false;
         }
 
+        // Class hierarchy is final now, so lay out the objects
+        ctx.getSymbolTable().computeLayouts();
+
         // Check def-use pairs (find uninitialized variables)
         root.accept(new DefUseVisitor());
 
@@ -71,9 +73,9 @@ public final class Phase {
     }
 
     /**
-     * Access program symbol table
+     * Access program symbol table of the current compilation
      */
     public static SymbolTable getSymbolTable() {
-        return s_symbolTable;
+        return CompilationContext.current().getSymbolTable();
     }
 }
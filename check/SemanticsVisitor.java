@@ -24,6 +24,19 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         assert m_symbolTable != null;
     }
 
+    /**
+     * Record the type of an expression, for the phases after this one
+     * (see SymbolTable.getType)
+     * 
+     * @param n    Expression
+     * @param type Expression type
+     * @return Expression type
+     */
+    private Type typed(final Expression n, final Type type) {
+        m_symbolTable.putType(n, type);
+        return type;
+    }
+
     /**
      * Visit program
      */
@@ -347,7 +360,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Expression result will be True/False
-        return Type.THE_BOOLEAN_TYPE;
+        return typed(n, Type.THE_BOOLEAN_TYPE);
     }
 
     /**
@@ -366,7 +379,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Expression result will be True/False
-        return Type.THE_BOOLEAN_TYPE;
+        return typed(n, Type.THE_BOOLEAN_TYPE);
     }
 
     /**
@@ -385,7 +398,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Expression result will be an integer
-        return Type.THE_INTEGER_TYPE;
+        return typed(n, Type.THE_INTEGER_TYPE);
     }
 
     /**
@@ -404,7 +417,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Expression result will be an integer
-        return Type.THE_INTEGER_TYPE;
+        return typed(n, Type.THE_INTEGER_TYPE);
     }
 
     /**
@@ -423,7 +436,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Expression result will be an integer
-        return Type.THE_INTEGER_TYPE;
+        return typed(n, Type.THE_INTEGER_TYPE);
     }
 
     /**
@@ -444,7 +457,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Lookup result will be an integer
-        return Type.THE_INTEGER_TYPE;
+        return typed(n, Type.THE_INTEGER_TYPE);
     }
 
     /**
@@ -459,7 +472,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Array length is an integer
-        return Type.THE_INTEGER_TYPE;
+        return typed(n, Type.THE_INTEGER_TYPE);
     }
 
     /**
@@ -529,26 +542,26 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
             if (vs == null) {
                 Logger.addError(n.lineNumber, n.columnNumber, "Attempt to call method %s from undeclared object %s",
                         funcName, ie.s);
-                return Type.THE_VOID_TYPE;
+                return typed(n, Type.THE_VOID_TYPE);
             }
 
             // Make sure the callee is not a primitive type
             if (CheckUtil.typeIsPrim(vs.type)) {
                 Logger.addError(n.lineNumber, n.columnNumber, "Attempt to call method %s from primitive type %s",
                         funcName, vs.type);
-                return Type.THE_VOID_TYPE;
+                return typed(n, Type.THE_VOID_TYPE);
             }
 
-            // Get method from class
-            final String objClass = vs.type.getName();
-            sym = m_symbolTable.getMethodEx(funcName, objClass, false);
+            // Get method from class (base class methods allowed)
+            cls = m_symbolTable.getClass(vs.type.getName());
+            sym = cls != null ? cls.getMethod(funcName) : null;
         }
         /**
          * Don't know what the callee is, but we know it isn't an object
          */
         else {
             Logger.addError(n.lineNumber, n.columnNumber, "Attempt to call method %s from non-object", funcName);
-            return Type.THE_VOID_TYPE;
+            return typed(n, Type.THE_VOID_TYPE);
         }
 
         // Pretty name for errors down the line
@@ -557,7 +570,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         // Couldn't find the method symbol in any class
         if (sym == null) {
             Logger.addError(n.lineNumber, n.columnNumber, "Attempt to call undeclared method: %s", prettyFunc);
-            return Type.THE_VOID_TYPE;
+            return typed(n, Type.THE_VOID_TYPE);
         }
 
         // Count arguments in call and declaration
@@ -586,7 +599,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         }
 
         // Evaluate to method return type
-        return sym.type;
+        return typed(n, sym.type);
     }
 
     /**
@@ -594,7 +607,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
      */
     @Override
     public Type visit(final IntegerLiteral n) {
-        return Type.THE_INTEGER_TYPE;
+        return typed(n, Type.THE_INTEGER_TYPE);
     }
 
     /**
@@ -602,7 +615,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
      */
     @Override
     public Type visit(final True n) {
-        return Type.THE_BOOLEAN_TYPE;
+        return typed(n, Type.THE_BOOLEAN_TYPE);
     }
 
     /**
@@ -610,7 +623,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
      */
     @Override
     public Type visit(final False n) {
-        return Type.THE_BOOLEAN_TYPE;
+        return typed(n, Type.THE_BOOLEAN_TYPE);
     }
 
     /**
@@ -620,7 +633,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
     public Type visit(final IdentifierExp n) {
         // Convert to identifier to avoid repeating code
         final Identifier id = new Identifier(n.lineNumber, n.columnNumber, n.s);
-        return id.accept(this);
+        return typed(n, id.accept(this));
     }
 
     /**
@@ -629,7 +642,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
     @Override
     public Type visit(final This n) {
         final ClassSymbol thisClass = m_symbolTable.currentClass();
-        return new IdentifierType(n.lineNumber, n.columnNumber, thisClass.name);
+        return typed(n, new IdentifierType(n.lineNumber, n.columnNumber, thisClass.name));
     }
 
     /**
@@ -643,7 +656,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
                     n.e);
         }
 
-        return Type.THE_INT_ARRAY_TYPE;
+        return typed(n, Type.THE_INT_ARRAY_TYPE);
     }
 
     /**
@@ -657,11 +670,11 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
         // Check that the identifier is valid
         if (sym == null) {
             Logger.addError(n.lineNumber, n.columnNumber, "Attempt to construct undeclared class %s", n.i.s);
-            return Type.THE_VOID_TYPE;
+            return typed(n, Type.THE_VOID_TYPE);
         }
 
         // Return identifier type
-        return new IdentifierType(n.lineNumber, n.columnNumber, sym.name);
+        return typed(n, new IdentifierType(n.lineNumber, n.columnNumber, sym.name));
     }
 
     /**
@@ -673,7 +686,7 @@ public final class SemanticsVisitor implements SyntaxTreeVisitor<Type> {
             Logger.addError(n.lineNumber, n.columnNumber, "Attempt to use boolean NOT operator on non-boolean value");
         }
 
-        return Type.THE_BOOLEAN_TYPE;
+        return typed(n, Type.THE_BOOLEAN_TYPE);
     }
 
     /**
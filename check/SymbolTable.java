@@ -7,24 +7,128 @@
 
 package check;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import syntax.Expression;
+import syntax.Type;
 
 /**
  * Symbol table for enabling semantic checks
+ * 
+ * Scopes form a tree (global scope -> class scopes -> method scopes), and each
+ * scope has its own hash map of symbols, so looking up an identifier doesn't
+ * have to build any strings.
  */
 public final class SymbolTable {
+    /**
+     * Scope level (and the symbols declared directly inside of it)
+     */
+    private static final class Scope {
+        // Scope name (null for the global scope)
+        private final String m_name;
+        // Enclosing scope (null for the global scope)
+        private final Scope m_outer;
+        // Nesting depth (zero for the global scope)
+        private final int m_depth;
+        // Symbols declared in this scope (in declaration order)
+        private final LinkedHashMap<String, BaseSymbol> m_symbols = new LinkedHashMap<>();
+        // Scopes nested inside of this scope (by name)
+        private final HashMap<String, Scope> m_inner = new HashMap<>();
+
+        /**
+         * Constructor
+         * 
+         * @param name  Scope name
+         * @param outer Enclosing scope
+         */
+        private Scope(final String name, final Scope outer) {
+            m_name = name;
+            m_outer = outer;
+            m_depth = outer != null ? outer.m_depth + 1 : 0;
+        }
+
+        /**
+         * Get nested scope (created if it doesn't exist yet)
+         * 
+         * @param name Scope name
+         */
+        private Scope enter(final String name) {
+            Scope scope = m_inner.get(name);
+
+            if (scope == null) {
+                scope = new Scope(name, this);
+                m_inner.put(name, scope);
+            }
+
+            return scope;
+        }
+    }
+
+    // Global scope (classes)
+    private final Scope m_global = new Scope(null, null);
     // Current scope
-    private LinkedList<String> m_scopeStack = new LinkedList<>();
-    // Symbol table
-    private HashMap<String, BaseSymbol> m_symbolMap = new HashMap<>();
+    private Scope m_scope = m_global;
+    // Type of every expression (found by SemanticsVisitor), by AST node identity
+    private final IdentityHashMap<Expression, Type> m_types = new IdentityHashMap<>();
 
     /**
      * Build a string representing the current scope.
      * Everything is concatenated with a period (".")
      */
     public String getScope() {
-        return String.join(".", m_scopeStack);
+        return getScopeName(m_scope);
+    }
+
+    /**
+     * Build a string representing a scope.
+     * Everything is concatenated with a period (".")
+     * 
+     * @param scope Scope
+     */
+    private static String getScopeName(final Scope scope) {
+        if (scope.m_outer == null) {
+            return "";
+        }
+
+        if (scope.m_outer.m_outer == null) {
+            return scope.m_name;
+        }
+
+        return String.join(".", getScopeName(scope.m_outer), scope.m_name);
+    }
+
+    /**
+     * Find scope from its string representation (see getScope)
+     * 
+     * @param scope Scope string
+     * @return Scope (null if it doesn't exist)
+     */
+    private Scope findScope(final String scope) {
+        // Global scope
+        if (scope == null || scope.isEmpty()) {
+            return m_global;
+        }
+
+        // Walk down one level at a time
+        Scope iter = m_global;
+        int begin = 0;
+        while (iter != null) {
+            final int end = scope.indexOf('.', begin);
+
+            if (end == -1) {
+                return iter.m_inner.get(begin == 0 ? scope : scope.substring(begin));
+            }
+
+            iter = iter.m_inner.get(scope.substring(begin, end));
+            begin = end + 1;
+        }
+
+        return null;
     }
 
     /**
@@ -35,27 +139,20 @@ public final class SymbolTable {
      * @param scope     Symbol scope
      * @param recursive Recursively search outer scopes
      */
-    private BaseSymbol getSymbol(final String name, final String scope, final boolean recursive) {
-        // Key is scope concatenated with name ("full" name)
-        final boolean globalScope = scope == null || scope.isEmpty();
-        final String fullName = globalScope ? name : String.join(".", scope, name);
-
-        // Search current scope
-        final BaseSymbol sym = m_symbolMap.get(fullName);
-        if (sym != null) {
-            // Found it!
-            return sym;
-        }
-
-        // Doesn't exist in this scope. Do we search the outer scope?
-        if (recursive && scope != null) {
-            final int scopeIndex = scope.lastIndexOf(".");
-            if (scopeIndex == -1) {
-                // No more outer scope layers
-                return null;
+    private static BaseSymbol getSymbol(final String name, final Scope scope, final boolean recursive) {
+        for (Scope iter = scope; iter != null; iter = iter.m_outer) {
+            // Search current scope
+            final BaseSymbol sym = iter.m_symbols.get(name);
+            if (sym != null) {
+                // Found it!
+                return sym;
             }
 
-            return getSymbol(name, scope.substring(0, scopeIndex), true);
+            // Doesn't exist in this scope. Do we search the outer scope?
+            // (The global scope is never searched from an inner scope)
+            if (!recursive || iter.m_depth <= 1) {
+                break;
+            }
         }
 
         // Nothing we can do
@@ -68,7 +165,7 @@ public final class SymbolTable {
      * @param name Variable name
      */
     public VarSymbol getVar(final String name) {
-        return getVarEx(name, getScope(), false);
+        return toVar(getSymbol(name, m_scope, false));
     }
 
     /**
@@ -79,13 +176,8 @@ public final class SymbolTable {
      * @param recursive Recursively search outer scopes
      */
     public VarSymbol getVarEx(final String name, final String scope, final boolean recursive) {
-        final BaseSymbol sym = getSymbol(name, scope, recursive);
-        if (sym == null) {
-            return null;
-        }
-
-        assert sym instanceof VarSymbol;
-        return (VarSymbol) sym;
+        final Scope where = findScope(scope);
+        return where != null ? toVar(getSymbol(name, where, recursive)) : null;
     }
 
     /**
@@ -94,7 +186,7 @@ public final class SymbolTable {
      * @param name Method name
      */
     public MethodSymbol getMethod(final String name) {
-        return getMethodEx(name, getScope(), false);
+        return toMethod(getSymbol(name, m_scope, false));
     }
 
     /**
@@ -105,13 +197,8 @@ public final class SymbolTable {
      * @param recursive Recursively search outer scopes
      */
     public MethodSymbol getMethodEx(final String name, final String scope, final boolean recursive) {
-        final BaseSymbol sym = getSymbol(name, scope, recursive);
-        if (sym == null) {
-            return null;
-        }
-
-        assert sym instanceof MethodSymbol;
-        return (MethodSymbol) sym;
+        final Scope where = findScope(scope);
+        return where != null ? toMethod(getSymbol(name, where, recursive)) : null;
     }
 
     /**
@@ -120,7 +207,7 @@ public final class SymbolTable {
      * @param name Class name
      */
     public ClassSymbol getClass(final String name) {
-        return getClassEx(name, null, false);
+        return toClass(getSymbol(name, m_global, false));
     }
 
     /**
@@ -131,7 +218,44 @@ public final class SymbolTable {
      * @param recursive Recursively search outer scopes
      */
     public ClassSymbol getClassEx(final String name, final String scope, final boolean recursive) {
-        final BaseSymbol sym = getSymbol(name, scope, recursive);
+        final Scope where = findScope(scope);
+        return where != null ? toClass(getSymbol(name, where, recursive)) : null;
+    }
+
+    /**
+     * Convert symbol to variable symbol
+     * 
+     * @param sym Symbol (null allowed)
+     */
+    private static VarSymbol toVar(final BaseSymbol sym) {
+        if (sym == null) {
+            return null;
+        }
+
+        assert sym instanceof VarSymbol;
+        return (VarSymbol) sym;
+    }
+
+    /**
+     * Convert symbol to method symbol
+     * 
+     * @param sym Symbol (null allowed)
+     */
+    private static MethodSymbol toMethod(final BaseSymbol sym) {
+        if (sym == null) {
+            return null;
+        }
+
+        assert sym instanceof MethodSymbol;
+        return (MethodSymbol) sym;
+    }
+
+    /**
+     * Convert symbol to class symbol
+     * 
+     * @param sym Symbol (null allowed)
+     */
+    private static ClassSymbol toClass(final BaseSymbol sym) {
         if (sym == null) {
             return null;
         }
@@ -147,18 +271,8 @@ public final class SymbolTable {
      * @return Old symbol (if exists)
      */
     private BaseSymbol putSymbol(final BaseSymbol sym) {
-        final String name = sym.name;
-        final String scope = getScope();
-
-        // Old value (NOT recursive to avoid updating values in the wrong scope)
-        final BaseSymbol old = getSymbol(name, scope, false);
-
-        // Keys in the hashmap are the scope + name
-        final boolean globalScope = scope == null || scope.isEmpty();
-        final String fullName = globalScope ? name : String.join(".", scope, name);
-        m_symbolMap.put(fullName, sym);
-
-        return old;
+        // Only the current scope (NOT recursive to avoid updating values in the wrong scope)
+        return m_scope.m_symbols.put(sym.name, sym);
     }
 
     /**
@@ -172,13 +286,7 @@ public final class SymbolTable {
             return null;
         }
 
-        final BaseSymbol sym = putSymbol(vs);
-        if (sym == null) {
-            return null;
-        }
-
-        assert sym instanceof VarSymbol;
-        return (VarSymbol) sym;
+        return toVar(putSymbol(vs));
     }
 
     /**
@@ -217,13 +325,7 @@ public final class SymbolTable {
             ms.parent = currentClass();
         }
 
-        final BaseSymbol sym = putSymbol(ms);
-        if (sym == null) {
-            return null;
-        }
-
-        assert sym instanceof MethodSymbol;
-        return (MethodSymbol) sym;
+        return toMethod(putSymbol(ms));
     }
 
     /**
@@ -241,29 +343,85 @@ public final class SymbolTable {
         // MiniJava does not allow nested classes
         assert !scopeIsClass() : "Can't nest classes in MiniJava!";
 
-        assert sym instanceof ClassSymbol;
-        return (ClassSymbol) sym;
+        return toClass(sym);
+    }
+
+    /**
+     * Record the type of an expression
+     * 
+     * @param exp  Expression
+     * @param type Expression type
+     */
+    public void putType(final Expression exp, final Type type) {
+        m_types.put(exp, type);
+    }
+
+    /**
+     * Get the type of an expression (found during the check phase)
+     * 
+     * @param exp Expression
+     * @return Expression type (null if the expression was never checked)
+     */
+    public Type getType(final Expression exp) {
+        return m_types.get(exp);
+    }
+
+    /**
+     * Get all classes (in declaration order)
+     */
+    public List<ClassSymbol> getClasses() {
+        final List<ClassSymbol> classes = new ArrayList<>();
+
+        for (final BaseSymbol sym : m_global.m_symbols.values()) {
+            if (sym instanceof ClassSymbol) {
+                classes.add((ClassSymbol) sym);
+            }
+        }
+
+        return classes;
+    }
+
+    /**
+     * Compute the object layout of every class (see ClassSymbol.computeLayout)
+     */
+    public void computeLayouts() {
+        final List<ClassSymbol> classes = getClasses();
+
+        // Overrides decide whether a hierarchy needs vtables
+        for (final ClassSymbol cs : classes) {
+            cs.addOverrides();
+        }
+
+        for (final ClassSymbol cs : classes) {
+            cs.computeLayout();
+        }
     }
 
     /**
      * Add/enter scope level
      */
     public void enterScope(final String scope) {
-        m_scopeStack.addLast(scope);
+        m_scope = m_scope.enter(scope);
     }
 
     /**
      * Remove/exit scope level
      */
     public String exitScope() {
-        return m_scopeStack.removeLast();
+        if (m_scope.m_outer == null) {
+            throw new NoSuchElementException();
+        }
+
+        final String name = m_scope.m_name;
+        m_scope = m_scope.m_outer;
+        return name;
     }
 
     /**
      * Reset/clear scope level
      */
     public void resetScope() {
-        m_scopeStack.clear();
+        m_scope = m_global;
     }
 
     /**
@@ -286,43 +444,36 @@ public final class SymbolTable {
      * Get current class from scope
      */
     public ClassSymbol currentClass() {
-        // Current scope, will be local to the function
-        String name = getScope();
-
-        // Pop one level of scope to get the class name
-        final int scopeIndex = name.lastIndexOf(".");
-        if (scopeIndex != -1) {
-            name = name.substring(0, scopeIndex);
-
-            // Remove leading scope levels
-            final int start = name.lastIndexOf(".");
-            if (start != -1) {
-                name = name.substring(start);
-            }
+        // Global scope isn't inside of any class
+        if (m_scope.m_outer == null) {
+            return null;
         }
 
-        return getClass(name);
+        // Go up to the outermost scope level to get the class name
+        Scope iter = m_scope;
+        while (iter.m_depth > 1) {
+            iter = iter.m_outer;
+        }
+
+        return getClass(iter.m_name);
     }
 
     /**
      * Get current method from scope
      */
     public MethodSymbol currentMethod() {
-        if (!scopeIsClass()) {
+        // Class scope isn't inside of any method
+        if (m_scope.m_depth < 2) {
             return null;
         }
 
-        // Current scope, will be local to the function
-        String method = getScope();
-
-        // Isolate the highest level of scope to get the method name
-        final int scopeIndex = method.lastIndexOf(".");
-        if (scopeIndex == -1) {
+        // Highest level of scope is the method name
+        final ClassSymbol cls = currentClass();
+        if (cls == null) {
             return null;
         }
-        method = method.substring(scopeIndex + 1);
 
         // Search current class for method
-        return currentClass().getMethod(method);
+        return cls.getMethod(m_scope.m_name);
     }
 }
\ No newline at end of file
@@ -38,6 +38,11 @@ public abstract class CodeFragment {
     // Whether this function is the main function (entrypoint)
     public boolean isEntry;
 
+    // Number of stack slots for spilled temps (locals are kept in temps)
+    public int numSpillSlots = 0;
+    // Number of prologue instructions at the start of the code
+    private int m_prologueSize;
+
     // Fragment-local temp manager
     public final TempManager tempMgr;
 
@@ -64,10 +69,32 @@ public abstract class CodeFragment {
         this.tempMgr = ir.tempMgr;
 
         // Create prologue/epilogue instructions
-        this.code = Util.concatList(prologue(), this.code);
+        final List<Instruction> prologue = prologue();
+        m_prologueSize = prologue.size();
+
+        this.code = Util.concatList(prologue, this.code);
         this.code = Util.concatList(this.code, epilogue());
     }
 
+    /**
+     * Allocate a new stack slot for a spilled temp.
+     * The prologue is re-generated to account for the larger frame.
+     * 
+     * @return Slot index (see Arch.getLocalAccess)
+     */
+    public int allocSpillSlot() {
+        final int slot = numSpillSlots;
+        numSpillSlots++;
+
+        // Replace old prologue
+        final List<Instruction> prologue = prologue();
+        this.code = Util.concatList(prologue,
+                this.code.subList(m_prologueSize, this.code.size()));
+        m_prologueSize = prologue.size();
+
+        return slot;
+    }
+
     /**
      * Get qualified name of fragment
      */
@@ -10,44 +10,47 @@ package codegen;
 import java.util.ArrayList;
 
 import main.Arch;
+import main.CompilationContext;
+import main.Config;
 import main.Logger;
+import main.Metrics;
 import translate.IRFragment;
 
 /**
  * Wrapper for "codegen phase" of compiler
  */
 public final class Phase {
-    // Generated assembly instructions
-    private static final ArrayList<CodeFragment> s_fragments = new ArrayList<>();
-
     /**
      * Clear phase state, in case the phase is being ran again
      */
-    private static void initialize() {
+    private static void initialize(final CompilationContext ctx) {
         Logger.registerPhase("CodeGen");
-        s_fragments.clear();
+        ctx.getCodeFragments().clear();
     }
 
     /**
      * Perform codegen phase of compiler.
      * Generate assembly code from IR
      * 
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute() {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
-        initialize();
+        initialize(ctx);
 
-        // Perform code generation using "maximal munch" algorithm
-        for (final IRFragment frag : translate.Phase.getFragments()) {
-            Arch.get().insnSelect(frag);
-        }
+        // Perform code generation using "maximal munch" algorithm.
+        // Fragments are independent, so they are processed in parallel.
+        ctx.getCodeFragments().addAll(
+                ctx.parallelMap(ctx.getIRFragments(), Phase::selectFragment));
 
         // Print assembly code before register allocation
-        for (final CodeFragment frag : s_fragments) {
-            Logger.logVerboseLn("%s", frag);
+        if (Config.isVerbose()) {
+            for (final CodeFragment frag : ctx.getCodeFragments()) {
+                Logger.logVerboseLn(frag::toString);
+            }
+            Logger.logVerboseLn("");
         }
-        Logger.logVerboseLn("");
 
         // Error during instruction selection
         if (Logger.isError()) {
@@ -58,9 +61,27 @@ public final class Phase {
     }
 
     /**
-     * Access program code fragments
+     * Perform instruction selection on an IR fragment
+     * 
+     * @param frag IR fragment
+     * @return Code fragment
+     */
+    public static CodeFragment selectFragment(final IRFragment frag) {
+        Metrics.begin("CodeGen");
+
+        final CodeFragment code = Arch.get().insnSelect(frag);
+
+        Metrics.count("instructions", code.code.size());
+        Metrics.count("temps", code.tempMgr.size());
+        Metrics.end(code.getName());
+
+        return code;
+    }
+
+    /**
+     * Access program code fragments of the current compilation
      */
     public static ArrayList<CodeFragment> getCodeFragments() {
-        return s_fragments;
+        return CompilationContext.current().getCodeFragments();
     }
 }
\ No newline at end of file
@@ -13,6 +13,10 @@ import java.util.ArrayList;
 import translate.IRFragment;
 import codegen.CodeFragment;
 import main.Arch;
+import main.Util;
+import assem.*;
+import codegen.arch.sparc.SparcInsn.Address;
+import codegen.arch.sparc.SparcInsn.Opcode;
 import tree.*;
 
 /**
@@ -150,12 +154,152 @@ public final class SparcArch extends Arch {
         return regs;
     }
 
+    /**
+     * Access all registers which can be allocated in a code fragment
+     * (in order of preference)
+     */
+    @Override
+    public List<Exp> getAllocatableRegisters(final CodeFragment frag) {
+        // Local registers are saved by the register window
+        final List<Exp> regs = getAllLocalRegisters();
+
+        // So are the input registers (%i6/%i7 are the frame pointer and return
+        // address). The main function does not have its own register window.
+        if (!frag.isEntry) {
+            for (int i = 0; i < sc_numRegister - 2; i++) {
+                regs.add(getFormalAccessAsCallee(i));
+            }
+        }
+
+        // Output registers are clobbered by function calls (%o6/%o7 are the stack
+        // pointer and return address)
+        for (int i = 0; i < sc_numRegister - 2; i++) {
+            regs.add(getFormalAccessAsCaller(i));
+        }
+
+        return regs;
+    }
+
+    /**
+     * Get labels which an instruction may branch to (excluding function calls)
+     */
+    @Override
+    public List<NameOfLabel> getInsnTargets(final Instruction insn) {
+        // Function calls return to the next instruction
+        if (insn.jumps() == null || SparcInsn.opcode(insn) == Opcode.CALL) {
+            return new ArrayList<>();
+        }
+
+        return insn.jumps();
+    }
+
+    /**
+     * Check whether execution can continue to the instruction after this one
+     */
+    @Override
+    public boolean insnFallsThrough(final Instruction insn) {
+        final Opcode op = SparcInsn.opcode(insn);
+        return op != Opcode.BA && op != Opcode.RET;
+    }
+
+    /**
+     * Check whether an instruction only copies one temp to another
+     */
+    @Override
+    public boolean isMoveInsn(final Instruction insn) {
+        return insn.isMove();
+    }
+
+    /**
+     * Get temps which are read by an instruction
+     */
+    @Override
+    public List<NameOfTemp> getInsnReads(final Instruction insn) {
+        final Opcode op = SparcInsn.opcode(insn);
+
+        // Stores list their address operands as destinations
+        if (op == Opcode.ST) {
+            return Util.concatList(insn.use(), insn.def());
+        }
+
+        // Return value is read by the caller
+        if (op == Opcode.RET) {
+            return Util.singleList(getReturnAccessAsCallee().temp);
+        }
+
+        return Util.concatList(insn.use(), null);
+    }
+
+    /**
+     * Get temps which are written by an instruction
+     */
+    @Override
+    public List<NameOfTemp> getInsnWrites(final Instruction insn) {
+        final Opcode op = SparcInsn.opcode(insn);
+
+        // Stores only write to memory
+        if (op == Opcode.ST) {
+            return new ArrayList<>();
+        }
+
+        // Function calls clobber the output registers
+        if (op == Opcode.CALL) {
+            final List<NameOfTemp> regs = new ArrayList<>();
+
+            for (int i = 0; i < sc_numRegister - 2; i++) {
+                regs.add(((TEMP) getFormalAccessAsCaller(i)).temp);
+            }
+
+            return regs;
+        }
+
+        return Util.concatList(insn.def(), null);
+    }
+
+    /**
+     * Create instruction to load a stack variable into a temp
+     */
+    @Override
+    public Instruction loadLocalInsn(final NameOfTemp dst, final int i) {
+        // Frame pointer offset (same as getLocalAccess)
+        final int offset = (i + 1) * getWordSize();
+
+        return SparcInsn.load(Address.SUB,
+                String.format("*(%%fp - %d) -> %s", offset, dst),
+                dst,
+                Util.makeList(getFrameAccess().temp, SparcInsn.immediate(offset)));
+    }
+
+    /**
+     * Create instruction to store a temp into a stack variable
+     */
+    @Override
+    public Instruction storeLocalInsn(final NameOfTemp src, final int i) {
+        // Frame pointer offset (same as getLocalAccess)
+        final int offset = (i + 1) * getWordSize();
+
+        return SparcInsn.store(Address.SUB,
+                String.format("%s -> *(%%fp - %d)", src, offset),
+                src,
+                Util.makeList(getFrameAccess().temp, SparcInsn.immediate(offset)));
+    }
+
+    /**
+     * Create copy of an instruction with different operands
+     */
+    @Override
+    public Instruction copyInsn(final Instruction insn, final List<NameOfTemp> dst,
+            final List<NameOfTemp> src) {
+        assert insn instanceof SparcInsn : "Not a SPARC instruction";
+        return ((SparcInsn) insn).withOperands(insn.comment, dst, src);
+    }
+
     /**
      * Perform SPARC instruction selection
      */
     @Override
-    public void insnSelect(final IRFragment frag) {
-        SparcSelect.munch(frag);
+    public CodeFragment insnSelect(final IRFragment frag) {
+        return SparcSelect.munch(frag);
     }
 
     /**
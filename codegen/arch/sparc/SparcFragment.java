@@ -14,6 +14,7 @@ import codegen.*;
 import translate.IRFragment;
 
 import assem.*;
+import codegen.arch.sparc.SparcInsn.Opcode;
 
 /**
  * Code fragment for the SPARC architecture
@@ -33,12 +34,14 @@ public final class SparcFragment extends CodeFragment {
         // Prologue label
         code.add(getPrologueLabel());
 
-        if (isEntry) {
+        // Main function only needs a frame for spilled temps
+        if (isEntry && numSpillSlots == 0) {
             code.add(new Comment("Main function does not have a stack frame."));
             code.add(new Comment("As a result, the prologue is empty."));
         } else {
-            code.add(new OperationInstruction(String.format(".set LOCLS, %d", this.mtd.locals.size())));
-            code.add(new OperationInstruction("save %sp, -4*(LOCLS+1+7+16)&-8, %sp"));
+            // Locals are kept in temps, so the only stack slots are for spills
+            code.add(new OperationInstruction(String.format(".set LOCLS, %d", numSpillSlots)));
+            code.add(new SparcInsn(Opcode.SAVE, "save %sp, -4*(LOCLS+1+7+16)&-8, %sp", null));
         }
 
         return code;
@@ -56,16 +59,16 @@ public final class SparcFragment extends CodeFragment {
 
         // Main function must call exit to flush output
         if (isEntry) {
-            code.add(new OperationInstruction("clr %o0"));
-            code.add(new OperationInstruction("call exit"));
+            code.add(new SparcInsn(Opcode.CLR, "clr %o0", null));
+            code.add(new SparcInsn(Opcode.CALL, "call exit", null));
             // Waste delay slot
-            code.add(new OperationInstruction("nop", "(do nothing in delay slot)"));
+            code.add(new SparcInsn(Opcode.NOP, "(do nothing in delay slot)", null, null));
         }
         // Non-main functions must destroy their stack frame
         else {
             // Destroy stack frame and return
-            code.add(new OperationInstruction("ret"));
-            code.add(new OperationInstruction("restore", "(utilize delay slot)"));
+            code.add(new SparcInsn(Opcode.RET, null, null, null));
+            code.add(new SparcInsn(Opcode.RESTORE, "(utilize delay slot)", null, null));
         }
 
         return code;
@@ -0,0 +1,323 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package codegen.arch.sparc;
+
+import java.util.List;
+
+import main.Util;
+
+import assem.*;
+import tree.*;
+
+/**
+ * SPARC assembly instruction
+ * 
+ * Instructions know their opcode (and addressing mode, for loads/stores), so
+ * the optimizer can match on them without looking at the assembly text.
+ * The assembly text is a fixed template per opcode/addressing mode, and
+ * operands are only substituted when the code is written.
+ * 
+ * Immediate values are represented by temps named after the value
+ * (e.g. "4"), and are written as-is since no register is mapped to them.
+ */
+public final class SparcInsn extends OperationInstruction {
+    /**
+     * Instruction opcodes
+     */
+    public enum Opcode {
+        // Arithmetic ("op `s0, `s1, `d0")
+        ADD("add"),
+        SUB("sub"),
+        SMUL("smul"),
+        XOR("xor"),
+
+        // Data movement ("op `s0, `d0")
+        MOV("mov"),
+        SET("set"),
+        CLR("clr"),
+
+        // Memory access (see Address)
+        LD("ld"),
+        ST("st"),
+
+        // Comparison ("cmp `s0, `s1")
+        CMP("cmp"),
+
+        // Branches ("op `j0")
+        BA("ba"),
+        BE("be"),
+        BNE("bne"),
+        BL("bl"),
+        BG("bg"),
+        BLE("ble"),
+        BGE("bge"),
+        CALL("call"),
+
+        // No operands
+        NOP("nop"),
+        RET("ret"),
+        SAVE("save"),
+        RESTORE("restore");
+
+        // Assembly mnemonic
+        public final String mnemonic;
+
+        private Opcode(final String mnemonic) {
+            this.mnemonic = mnemonic;
+        }
+
+        /**
+         * Check whether this is a branch (not including function calls)
+         */
+        public boolean isBranch() {
+            return this.compareTo(BA) >= 0 && this.compareTo(BGE) <= 0;
+        }
+    }
+
+    /**
+     * Addressing modes of memory operands (and call targets)
+     */
+    public enum Address {
+        // Not a memory access
+        NONE(""),
+        // [reg] (or call to the address in reg)
+        REG(""),
+        // [reg+reg/imm]
+        ADD("+"),
+        // [reg-reg/imm]
+        SUB("-");
+
+        // Operator between the operands
+        public final String operator;
+
+        private Address(final String operator) {
+            this.operator = operator;
+        }
+    }
+
+    // Assembly template of each opcode/addressing mode
+    private static final String[][] sc_templates = buildTemplates();
+
+    // Instruction opcode
+    public final Opcode opcode;
+    // Addressing mode (LD/ST/CALL only)
+    public final Address address;
+
+    /**
+     * Constructor
+     * 
+     * @param opcode  Instruction opcode
+     * @param address Addressing mode (LD/ST/CALL only)
+     * @param comment Comment (can be null)
+     * @param dst     Destination operands
+     * @param src     Source operands
+     * @param jumps   Branch targets
+     */
+    public SparcInsn(final Opcode opcode, final Address address, final String comment,
+            final List<NameOfTemp> dst, final List<NameOfTemp> src,
+            final List<NameOfLabel> jumps) {
+        this(opcode, address, sc_templates[opcode.ordinal()][address.ordinal()],
+                comment, dst, src, jumps);
+    }
+
+    /**
+     * Constructor (with assembly text)
+     */
+    private SparcInsn(final Opcode opcode, final Address address, final String text,
+            final String comment, final List<NameOfTemp> dst, final List<NameOfTemp> src,
+            final List<NameOfLabel> jumps) {
+        super(text, comment, dst, src, jumps);
+        this.opcode = opcode;
+        this.address = address;
+    }
+
+    /**
+     * Constructor (for instructions not accessing memory)
+     * 
+     * @param opcode  Instruction opcode
+     * @param comment Comment (can be null)
+     * @param dst     Destination operands
+     * @param src     Source operands
+     */
+    public SparcInsn(final Opcode opcode, final String comment,
+            final List<NameOfTemp> dst, final List<NameOfTemp> src) {
+        this(opcode, Address.NONE, comment, dst, src, null);
+    }
+
+    /**
+     * Constructor (for instructions with fixed text, such as "save %sp, ...")
+     * 
+     * @param opcode  Instruction opcode
+     * @param text    Assembly text
+     * @param comment Comment (can be null)
+     */
+    public SparcInsn(final Opcode opcode, final String text, final String comment) {
+        this(opcode, Address.NONE, text, comment, null, null, null);
+    }
+
+    /**
+     * Create instruction with source and destination operands
+     * (MOV/SET/CLR, or arithmetic if there are two sources)
+     * 
+     * @param opcode  Instruction opcode
+     * @param comment Comment
+     * @param dst     Destination operand
+     * @param src     Source operands
+     */
+    public static SparcInsn op(final Opcode opcode, final String comment,
+            final NameOfTemp dst, final NameOfTemp... src) {
+        return new SparcInsn(opcode, comment, Util.singleList(dst), Util.makeList(src));
+    }
+
+    /**
+     * Create branch instruction
+     * 
+     * @param opcode Branch opcode
+     * @param target Label to branch to
+     */
+    public static SparcInsn branch(final Opcode opcode, final NameOfLabel target) {
+        return new SparcInsn(opcode, Address.NONE, null, null, null, Util.singleList(target));
+    }
+
+    /**
+     * Create load instruction ("ld [`s0 (+/- `s1)], `d0")
+     * 
+     * @param address Addressing mode
+     * @param comment Comment
+     * @param dst     Destination temp
+     * @param addr    Address operands
+     */
+    public static SparcInsn load(final Address address, final String comment,
+            final NameOfTemp dst, final List<NameOfTemp> addr) {
+        return new SparcInsn(Opcode.LD, address, comment, Util.singleList(dst), addr, null);
+    }
+
+    /**
+     * Create store instruction ("st `s0, [`d0 (+/- `d1)]").
+     * Address operands are listed as destinations (see SparcArch.getInsnReads).
+     * 
+     * @param address Addressing mode
+     * @param comment Comment
+     * @param src     Source temp
+     * @param addr    Address operands
+     */
+    public static SparcInsn store(final Address address, final String comment,
+            final NameOfTemp src, final List<NameOfTemp> addr) {
+        return new SparcInsn(Opcode.ST, address, comment, addr, Util.singleList(src), null);
+    }
+
+    /**
+     * Create copy of this instruction with different operands
+     * 
+     * @param comment New comment
+     * @param dst     New destination operands
+     * @param src     New source operands
+     */
+    public SparcInsn withOperands(final String comment, final List<NameOfTemp> dst,
+            final List<NameOfTemp> src) {
+        return new SparcInsn(opcode, address, assem, comment, dst, src, jumps());
+    }
+
+    /**
+     * Check whether this instruction only copies one temp to another
+     */
+    @Override
+    public boolean isMove() {
+        return opcode == Opcode.MOV && use() != null && def() != null;
+    }
+
+    /**
+     * Get opcode of an instruction
+     * 
+     * @return Opcode (null for labels, comments, and directives)
+     */
+    public static Opcode opcode(final Instruction insn) {
+        if (insn instanceof SparcInsn) {
+            return ((SparcInsn) insn).opcode;
+        }
+
+        return null;
+    }
+
+    /**
+     * Create immediate operand
+     */
+    public static NameOfTemp immediate(final long value) {
+        return new NameOfTemp(Long.toString(value));
+    }
+
+    /**
+     * Check whether an operand is an immediate value (see immediate)
+     */
+    public static boolean isImmediate(final NameOfTemp t) {
+        final String s = t.toString();
+        return !s.isEmpty() && (Character.isDigit(s.charAt(0)) || s.charAt(0) == '-');
+    }
+
+    /**
+     * Check whether an operand is the immediate value zero
+     */
+    public static boolean isZero(final NameOfTemp t) {
+        return t.toString().equals("0");
+    }
+
+    /**
+     * Build assembly templates of all opcodes/addressing modes
+     */
+    private static String[][] buildTemplates() {
+        final String[][] templates = new String[Opcode.values().length][Address.values().length];
+
+        for (final Opcode opcode : Opcode.values()) {
+            for (final Address address : Address.values()) {
+                templates[opcode.ordinal()][address.ordinal()] = buildTemplate(opcode, address);
+            }
+        }
+
+        return templates;
+    }
+
+    /**
+     * Build assembly template of an opcode/addressing mode
+     */
+    private static String buildTemplate(final Opcode opcode, final Address address) {
+        switch (opcode) {
+            case ADD:
+            case SUB:
+            case SMUL:
+            case XOR:
+                return opcode.mnemonic + " `s0, `s1, `d0";
+            case MOV:
+            case SET:
+                return opcode.mnemonic + " `s0, `d0";
+            case CLR:
+                return opcode.mnemonic + " `d0";
+            case LD:
+                return address == Address.REG
+                        ? "ld [`s0], `d0"
+                        : "ld [`s0" + address.operator + "`s1], `d0";
+            case ST:
+                return address == Address.REG
+                        ? "st `s0, [`d0]"
+                        : "st `s0, [`d0" + address.operator + "`d1]";
+            case CMP:
+                return "cmp `s0, `s1";
+            case CALL:
+                return address == Address.REG
+                        ? "call `s0"
+                        : "call `j0";
+            case NOP:
+            case RET:
+            case SAVE:
+            case RESTORE:
+                return opcode.mnemonic;
+            default:
+                // Branches/calls
+                return opcode.mnemonic + " `j0";
+        }
+    }
+}
@@ -8,90 +8,137 @@
 package codegen.arch.sparc;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Objects;
 
 import codegen.CodeFragment;
 import main.Logger;
+import main.Metrics;
 import main.Util;
 import optimize.Lifetime;
 
 import assem.*;
 import tree.*;
+import codegen.arch.sparc.SparcInsn.Address;
+import codegen.arch.sparc.SparcInsn.Opcode;
 
 /**
  * SPARC back-end code optimizations
  */
 public final class SparcOptimizer {
+    // Instructions waiting to be (re-)visited by the optimizer
+    private final BitSet m_worklist;
+    // Lowest instruction index that may be in the worklist
+    private int m_worklistMin = 0;
+
     /**
-     * Peform optimizations on a code fragment
+     * Constructor
+     * 
+     * @param size Number of instructions in the fragment
+     */
+    private SparcOptimizer(final int size) {
+        // Visit all instructions, in order
+        m_worklist = new BitSet(size);
+        m_worklist.set(0, size);
+    }
+
+    /**
+     * Peform optimizations on a code fragment, until nothing can be changed
+     * 
+     * Every instruction is visited once, and after that only instructions near
+     * a rewrite (neighbors, and def/use sites of the affected temps) are
+     * visited again, instead of re-running whole passes over the fragment.
+     * 
+     * Deleted instructions are left as null in the code (so instruction indices
+     * stay stable) and temp lifetimes are updated in-place by every rewrite.
+     * The code is only compacted (and lifetimes re-analyzed) at the end.
+     * 
+     * @return Whether any optimizations have occurred
      */
     public static boolean optimize(final CodeFragment frag) {
+        return new SparcOptimizer(frag.code.size()).run(frag);
+    }
+
+    /**
+     * Peform optimizations on a code fragment, until the worklist is empty
+     * 
+     * @return Whether any optimizations have occurred
+     */
+    private boolean run(final CodeFragment frag) {
         // Whether any optimizations have occurred
         boolean opt = false;
         // Number of instructions deleted in the last optimization
         int numDelete = 0;
+        // Number of instructions visited/rewritten (for metrics)
+        int numVisit = 0;
+        int numRewrite = 0;
 
-        for (int i = 0; i < frag.code.size(); i++) {
+        for (int i = pollWorklist(); i >= 0; i = pollWorklist()) {
             // Reset optimization info
-            numDelete = 0;
+            numDelete = -1;
 
             // Current instruction
             final Instruction insn = frag.code.get(i);
 
-            // Ignore labels/comments
-            if (insn instanceof LabelInstruction || insn instanceof Comment) {
+            // Ignore deleted instructions
+            if (insn == null) {
                 continue;
             }
 
+            numVisit++;
+
             /**
              * Try instruction specific optimizations
              */
-            switch (opcode(insn)) {
-                case "add":
+            final Opcode op = opcode(insn);
+            switch (op != null ? op : Opcode.NOP) {
+                case ADD:
                     numDelete = tryOptAdd(frag, i);
                     break;
-                case "ba":
+                case BA:
                     numDelete = tryOptBa(frag, i);
                     break;
-                case "call":
+                case CALL:
                     numDelete = tryOptCall(frag, i);
                     break;
-                case "mov":
+                case MOV:
                     numDelete = tryOptMov(frag, i);
                     break;
-                case "set":
+                case SET:
                     numDelete = tryOptSet(frag, i);
                     break;
-                case "sub":
+                case SUB:
                     numDelete = tryOptSub(frag, i);
                     break;
-            }
-
-            // Fix context after potentially changing code
-            if (numDelete >= 0) {
-                // Fix instruction index
-                i -= numDelete;
-                // Update temp lifetimes with new code
-                updateLifetimes(frag);
+                default:
+                    break;
             }
 
             /**
              * Try generic optimizations
+             * (if the instruction was changed, it has been re-queued instead)
              */
-            numDelete = tryOptCleanUpMerge(frag, i);
-
-            // Fix context after potentially changing code
-            if (numDelete >= 0) {
-                // Fix instruction index
-                i -= numDelete;
-                // Update temp lifetimes with new code
-                updateLifetimes(frag);
+            if (numDelete < 0) {
+                numDelete = tryOptCleanUpMerge(frag, i);
             }
 
             // Mark whether any optimizations were successful
             opt = opt | numDelete >= 0;
+            if (numDelete >= 0) {
+                numRewrite++;
+            }
         }
 
+        // No passes over the code, the worklist is the unit of work
+        Metrics.count("visits", numVisit);
+        Metrics.count("rewrites", numRewrite);
+
+        // Compact code now that the optimizations are over
+        frag.code.removeIf(Objects::isNull);
+        // Instruction indices have changed
+        updateLifetimes(frag);
+
         return opt;
     }
 
@@ -105,7 +152,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptAdd(final CodeFragment frag, final int index) {
+    private int tryOptAdd(final CodeFragment frag, final int index) {
         int numDelete = 0;
 
         // Optimization 1: Try to simplify operation (is one side CONST 0?)
@@ -137,7 +184,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptAddSimplify(final CodeFragment frag, final int index) {
+    private int tryOptAddSimplify(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
@@ -155,10 +202,10 @@ public final class SparcOptimizer {
 
         // If either side is zero, the instruction can be substituted with a mov.
         // (Future optimization passes may optimize out this new mov instruction)
-        if (src.toString().equals("0")) {
+        if (SparcInsn.isZero(src)) {
             zeroAdd = src;
             nonzeroAdd = src2;
-        } else if (src2.toString().equals("0")) {
+        } else if (SparcInsn.isZero(src2)) {
             zeroAdd = src2;
             nonzeroAdd = src;
         }
@@ -168,13 +215,13 @@ public final class SparcOptimizer {
             return -1;
         }
 
-        Logger.logVerboseLn("Removing unnecessary ADD (0+x or x+0) in favor of MOV: %s",
-                insn.format(frag.map));
+        Logger.logTraceLn(() -> String.format(
+                "Removing unnecessary ADD (0+x or x+0) in favor of MOV: %s",
+                insn.format(frag.map)));
 
         // Addition evaluates to other source
-        frag.code.set(index,
-                new MoveInstruction(
-                        "mov `s0, `d0",
+        replaceInsn(frag, index,
+                SparcInsn.op(Opcode.MOV,
                         // Fix comment
                         String.format("%s -> %s", nonzeroAdd, dst),
                         dst,
@@ -204,7 +251,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptAddMerge(final CodeFragment frag, final int index) {
+    private int tryOptAddMerge(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
@@ -219,55 +266,59 @@ public final class SparcOptimizer {
         final String merged = String.format("%s + %s", src, src2);
 
         // Temp is not thrown away immediately
-        if (dstLife == null || dstLife.endIndex != index + 1) {
+        if (dstLife == null || !dstLife.diesAt(nextIndex(frag, index))) {
             return -1;
         }
 
+        // Lifetime-ending instruction (lifetime changes once code is modified)
+        final Instruction endInsn = dstLife.endInsn;
+        final int endIndex = dstLife.endIndex;
+
         // Temp is thrown away in a load instruction...
-        if (opcode(dstLife.endInsn).equals("ld")
-                // ...and it is the source of the load
-                && dstLife.endInsn.uses(dst)) {
+        if (opcode(endInsn) == Opcode.LD
+                // ...and it is the (whole) address of the load
+                && ((SparcInsn) endInsn).address == Address.REG
+                && endInsn.uses(dst)) {
 
             // Update load instruction
-            frag.code.set(dstLife.endIndex,
-                    new OperationInstruction(
-                            "ld [`s0+`s1], `d0",
+            replaceInsn(frag, endIndex,
+                    SparcInsn.load(Address.ADD,
                             // Fix comment
-                            dstLife.endInsn.comment.replace(
+                            endInsn.comment.replace(
                                     dst.toString(),
                                     merged),
-                            dstLife.endInsn.def(),
+                            endInsn.def().get(0),
                             Util.makeList(src, src2)));
 
             // Delete add instruction
-            frag.code.remove(index);
+            deleteInsn(frag, index);
             // One instruction deleted
             return 1;
         }
         // Temp is thrown away in a store instruction...
-        else if (opcode(dstLife.endInsn).equals("st")
-                // ...and it is the destination of the store
-                && dstLife.endInsn.defines(dst)) {
-
-            // Update load instruction
-            frag.code.set(dstLife.endIndex,
-                    new OperationInstruction(
-                            "st `s0, [`d0+`d1]",
+        else if (opcode(endInsn) == Opcode.ST
+                // ...and it is the (whole) destination of the store
+                && ((SparcInsn) endInsn).address == Address.REG
+                && endInsn.defines(dst)) {
+
+            // Update store instruction
+            replaceInsn(frag, endIndex,
+                    SparcInsn.store(Address.ADD,
                             // Fix comment
-                            dstLife.endInsn.comment.replace(
+                            endInsn.comment.replace(
                                     dst.toString(),
                                     merged),
-                            Util.makeList(src, src2),
-                            dstLife.endInsn.use()));
+                            endInsn.use().get(0),
+                            Util.makeList(src, src2)));
 
             // Delete add instruction
-            frag.code.remove(index);
+            deleteInsn(frag, index);
             // One instruction deleted
             return 1;
         }
 
-        // No instructions are deleted
-        return 0;
+        // No optimizations performed
+        return -1;
     }
 
     /**
@@ -303,19 +354,19 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptBa(final CodeFragment frag, final int index) {
+    private int tryOptBa(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
         // Jump destination
         final NameOfLabel target = insn.jumps().get(0);
 
         // Skip over jump instruction
-        int j = index + 1;
+        int j = nextIndex(frag, index);
         // Look for label immediately after
-        while (j < frag.code.size() - 1
+        while (nextIndex(frag, j) < frag.code.size()
                 && !(frag.code.get(j) instanceof LabelInstruction)
-                || opcode(frag.code.get(j)).equals("nop")) {
-            j++;
+                || opcode(frag.code.get(j)) == Opcode.NOP) {
+            j = nextIndex(frag, j);
         }
 
         // Instruction following branch is not a label
@@ -331,16 +382,17 @@ public final class SparcOptimizer {
             return -1;
         }
 
-        Logger.logVerboseLn("Removing unnecessary branch (label %s immediately follows): %s",
-                label, insn.format(frag.map));
+        Logger.logTraceLn(() -> String.format(
+                "Removing unnecessary branch (label %s immediately follows): %s",
+                label, insn.format(frag.map)));
 
         // Delete all instructions between unconditional branch (inclusive)
         // and target label (exclusive)
-        final int numDelete = j - index;
+        int numDelete = 0;
 
-        while (index < j) {
-            frag.code.remove(index);
-            j--;
+        for (int k = index; k < j; k = nextIndex(frag, k)) {
+            deleteInsn(frag, k);
+            numDelete++;
         }
 
         return numDelete;
@@ -366,22 +418,22 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptCall(final CodeFragment frag, final int index) {
+    private int tryOptCall(final CodeFragment frag, final int index) {
         // Skip over call instruction
-        int j = index + 1;
+        int j = nextIndex(frag, index);
 
         // Look for "mov %o0, XX" after function call (should be first non-nop
         // instruction)
-        while (j < frag.code.size() - 1
-                && opcode(frag.code.get(j)).equals("nop")) {
-            j++;
+        while (nextIndex(frag, j) < frag.code.size()
+                && opcode(frag.code.get(j)) == Opcode.NOP) {
+            j = nextIndex(frag, j);
         }
 
         // First non-nop instruction after function call
         final Instruction afterCallInsn = frag.code.get(j);
 
         // Instruction after call is not a MOV (%o0 is not being preserved)
-        if (!opcode(afterCallInsn).equals("mov")) {
+        if (opcode(afterCallInsn) != Opcode.MOV) {
             return -1;
         }
 
@@ -391,7 +443,7 @@ public final class SparcOptimizer {
 
         // Temp does not immediately get thrown away.
         // We cannot safely remove it without much further analysis.
-        if (dstLife == null || dstLife.endIndex != j + 1) {
+        if (dstLife == null || !dstLife.diesAt(nextIndex(frag, j))) {
             return -1;
         }
 
@@ -414,7 +466,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptMov(final CodeFragment frag, final int index) {
+    private int tryOptMov(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
@@ -428,10 +480,11 @@ public final class SparcOptimizer {
             return -1;
         }
 
-        Logger.logVerboseLn("Removing MOV instruction (no-op): %s",
-                insn.format(frag.map));
+        Logger.logTraceLn(() -> String.format(
+                "Removing MOV instruction (no-op): %s",
+                insn.format(frag.map)));
 
-        frag.code.remove(index);
+        deleteInsn(frag, index);
 
         // One instruction deleted
         return 1;
@@ -457,7 +510,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptSet(final CodeFragment frag, final int index) {
+    private int tryOptSet(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
@@ -467,17 +520,26 @@ public final class SparcOptimizer {
         final NameOfTemp dst = insn.def().get(0);
         final Lifetime dstLife = frag.lifetimes.get(dst);
 
+        // Only numbers can be immediate values (not labels)
+        if (!SparcInsn.isImmediate(src)) {
+            return -1;
+        }
+
         // Can't merge with next instruction, lifetime is too long
-        if (dstLife == null || dstLife.endIndex != index + 1) {
+        if (dstLife == null || !dstLife.diesAt(nextIndex(frag, index))) {
             return -1;
         }
 
         // Next instruction doesn't support immediate values.
         // Can't meaningfully merge this SET instruction.
-        if (!opcode(dstLife.endInsn).equals("add")
-                && !opcode(dstLife.endInsn).equals("sub")
-                && !opcode(dstLife.endInsn).equals("cmp")) {
-            return -1;
+        final Opcode endOp = opcode(dstLife.endInsn);
+        switch (endOp != null ? endOp : Opcode.NOP) {
+            case ADD:
+            case SUB:
+            case CMP:
+                break;
+            default:
+                return -1;
         }
 
         // The next instruction does not use the result from this SET instruction
@@ -485,8 +547,9 @@ public final class SparcOptimizer {
             return -1;
         }
 
-        Logger.logVerboseLn("Replacing redundant SET with immediate (next insn throwaway): %s",
-                insn.format(frag.map));
+        Logger.logTraceLn(() -> String.format(
+                "Replacing redundant SET with immediate (next insn throwaway): %s",
+                insn.format(frag.map)));
 
         optMergeThisToNextInsn(frag, index, src, dst);
 
@@ -504,7 +567,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptSub(final CodeFragment frag, final int index) {
+    private int tryOptSub(final CodeFragment frag, final int index) {
         int numDelete = 0;
 
         // Optimization 1: Try to simplify operation (is the RHS CONST 0?)
@@ -535,7 +598,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptSubSimplify(final CodeFragment frag, final int index) {
+    private int tryOptSubSimplify(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
@@ -547,18 +610,18 @@ public final class SparcOptimizer {
 
         // If the RHS is zero, the instruction can be substituted with a mov.
         // (Future optimization passes may optimize out this new mov instruction)
-        if (!src2.toString().equals("0")) {
+        if (!SparcInsn.isZero(src2)) {
             // Nothing to optimize
             return -1;
         }
 
-        Logger.logVerboseLn("Removing unnecessary SUB (x-0) in favor of MOV: %s",
-                insn.format(frag.map));
+        Logger.logTraceLn(() -> String.format(
+                "Removing unnecessary SUB (x-0) in favor of MOV: %s",
+                insn.format(frag.map)));
 
         // Addition evaluates to other source
-        frag.code.set(index,
-                new MoveInstruction(
-                        "mov `s0, `d0",
+        replaceInsn(frag, index,
+                SparcInsn.op(Opcode.MOV,
                         // Fix comment
                         String.format("%s -> %s", src, dst),
                         dst,
@@ -588,7 +651,7 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptSubMerge(final CodeFragment frag, final int index) {
+    private int tryOptSubMerge(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
@@ -603,55 +666,59 @@ public final class SparcOptimizer {
         final String merged = String.format("%s - %s", src, src2);
 
         // Temp is not thrown away immediately
-        if (dstLife == null || dstLife.endIndex != index + 1) {
+        if (dstLife == null || !dstLife.diesAt(nextIndex(frag, index))) {
             return -1;
         }
 
+        // Lifetime-ending instruction (lifetime changes once code is modified)
+        final Instruction endInsn = dstLife.endInsn;
+        final int endIndex = dstLife.endIndex;
+
         // Temp is thrown away in a load instruction...
-        if (opcode(dstLife.endInsn).equals("ld")
-                // ...and it is the source of the load
-                && dstLife.endInsn.uses(dst)) {
+        if (opcode(endInsn) == Opcode.LD
+                // ...and it is the (whole) address of the load
+                && ((SparcInsn) endInsn).address == Address.REG
+                && endInsn.uses(dst)) {
 
             // Update load instruction
-            frag.code.set(dstLife.endIndex,
-                    new OperationInstruction(
-                            "ld [`s0-`s1], `d0",
+            replaceInsn(frag, endIndex,
+                    SparcInsn.load(Address.SUB,
                             // Fix comment
-                            dstLife.endInsn.comment.replace(
+                            endInsn.comment.replace(
                                     dst.toString(),
                                     merged),
-                            dstLife.endInsn.def(),
+                            endInsn.def().get(0),
                             Util.makeList(src, src2)));
 
             // Delete sub instruction
-            frag.code.remove(index);
+            deleteInsn(frag, index);
             // One instruction deleted
             return 1;
         }
         // Temp is thrown away in a store instruction...
-        else if (opcode(dstLife.endInsn).equals("st")
-                // ...and it is the destination of the store
-                && dstLife.endInsn.defines(dst)) {
-
-            // Update load instruction
-            frag.code.set(dstLife.endIndex,
-                    new OperationInstruction(
-                            "st `s0, [`d0-`d1]",
+        else if (opcode(endInsn) == Opcode.ST
+                // ...and it is the (whole) destination of the store
+                && ((SparcInsn) endInsn).address == Address.REG
+                && endInsn.defines(dst)) {
+
+            // Update store instruction
+            replaceInsn(frag, endIndex,
+                    SparcInsn.store(Address.SUB,
                             // Fix comment
-                            dstLife.endInsn.comment.replace(
+                            endInsn.comment.replace(
                                     dst.toString(),
                                     merged),
-                            Util.makeList(src, src2),
-                            dstLife.endInsn.use()));
+                            endInsn.use().get(0),
+                            Util.makeList(src, src2)));
 
             // Delete sub instruction
-            frag.code.remove(index);
+            deleteInsn(frag, index);
             // One instruction deleted
             return 1;
         }
 
-        // No instructions are deleted
-        return 0;
+        // No optimizations performed
+        return -1;
     }
 
     /**
@@ -666,27 +733,37 @@ public final class SparcOptimizer {
      * @param index Instruction index (where to perform optimization)
      * @return Number of instructions deleted (to adjust index in caller)
      */
-    private static int tryOptCleanUpMerge(final CodeFragment frag, final int index) {
+    private int tryOptCleanUpMerge(final CodeFragment frag, final int index) {
         // Instruction to optimize
         final Instruction insn = frag.code.get(index);
 
+        // Labels/comments/directives have nothing to merge
+        if (!(insn instanceof SparcInsn)) {
+            return -1;
+        }
+
         // Cannot optimize anything
         if (insn.use() == null || insn.def() == null ||
                 insn.use().isEmpty() || insn.def().isEmpty()) {
             return -1;
         }
 
+        // Stores list their address operands as destinations, but only read them
+        if (opcode(insn) == Opcode.ST) {
+            return -1;
+        }
+
         // Information on destination operand
         final NameOfTemp dst = insn.def().get(0);
         final Lifetime dstLife = frag.lifetimes.get(dst);
 
         // Can't merge with next instruction, lifetime is too long
-        if (dstLife == null || dstLife.endIndex != index + 1) {
+        if (dstLife == null || !dstLife.diesAt(nextIndex(frag, index))) {
             return -1;
         }
 
         // Next instruction is not a MOV
-        if (!opcode(dstLife.endInsn).equals("mov")) {
+        if (opcode(dstLife.endInsn) != Opcode.MOV) {
             return -1;
         }
 
@@ -696,8 +773,9 @@ public final class SparcOptimizer {
             return -1;
         }
 
-        Logger.logVerboseLn("Removing redundant move (throwaway) after instruction: %s",
-                insn.format(frag.map));
+        Logger.logTraceLn(() -> String.format(
+                "Removing redundant move (throwaway) after instruction: %s",
+                insn.format(frag.map)));
 
         optMergeNextToThisInsn(frag, index);
 
@@ -717,7 +795,7 @@ public final class SparcOptimizer {
      * @param frag  Code fragment containing the instructions
      * @param index Current instruction index
      */
-    private static void optMergeNextToThisInsn(final CodeFragment frag,
+    private void optMergeNextToThisInsn(final CodeFragment frag,
             final int index) {
         assert index < frag.code.size() : "Bad index";
         final Instruction insn = frag.code.get(index);
@@ -726,20 +804,22 @@ public final class SparcOptimizer {
         final NameOfTemp dst = insn.def().get(0);
         final Lifetime dstLife = frag.lifetimes.get(dst);
 
+        // Lifetime-ending instruction (lifetime changes once code is modified)
+        final Instruction endInsn = dstLife.endInsn;
+        final int endIndex = dstLife.endIndex;
+
         // Update this instruction
-        frag.code.set(index,
-                new OperationInstruction(
-                        insn.assem,
+        replaceInsn(frag, index,
+                ((SparcInsn) insn).withOperands(
                         // Fix comment
                         insn.comment.replace(
                                 insn.def().get(0).toString(),
-                                dstLife.endInsn.def().get(0).toString()),
-                        dstLife.endInsn.def(),
-                        insn.use(),
-                        insn.jumps()));
+                                endInsn.def().get(0).toString()),
+                        endInsn.def(),
+                        insn.use()));
 
         // Remove old instruction
-        frag.code.remove(dstLife.endIndex);
+        deleteInsn(frag, endIndex);
     }
 
     /**
@@ -756,49 +836,187 @@ public final class SparcOptimizer {
      * @param keep   Temp to keep
      * @param remove Temp to remove (by replacing)
      */
-    private static void optMergeThisToNextInsn(final CodeFragment frag,
+    private void optMergeThisToNextInsn(final CodeFragment frag,
             final int index, final NameOfTemp keep, final NameOfTemp remove) {
         assert index < frag.code.size() : "Bad index";
-        assert index < frag.code.size() - 1 : "No next instruction";
-        final Instruction nextInsn = frag.code.get(index + 1);
+        final int nextIndex = nextIndex(frag, index);
+        assert nextIndex < frag.code.size() : "No next instruction";
+        final Instruction nextInsn = frag.code.get(nextIndex);
 
         // Build source args
         assert nextInsn.use() != null : "No sources?";
-        final List<NameOfTemp> s = new ArrayList<>();
-        for (final NameOfTemp t : nextInsn.use()) {
-            // Replace temp in next instruction
-            if (t.equals(remove)) {
-                s.add(keep);
-            } else {
-                s.add(t);
-            }
-        }
+        final List<NameOfTemp> s = replaceTemp(nextInsn.use(), keep, remove);
+
+        // Stores list their address operands as destinations (they are read too)
+        final List<NameOfTemp> d = opcode(nextInsn) == Opcode.ST
+                ? replaceTemp(nextInsn.def(), keep, remove)
+                : nextInsn.def();
 
         // Update next instruction
-        frag.code.set(index + 1,
-                new OperationInstruction(
-                        nextInsn.assem,
+        replaceInsn(frag, nextIndex,
+                ((SparcInsn) nextInsn).withOperands(
                         // Fix comment
                         nextInsn.comment.replace(
                                 remove.toString(),
                                 keep.toString()),
-                        nextInsn.def(),
-                        s,
-                        nextInsn.jumps()));
+                        d,
+                        s));
 
         // Delete this instruction
-        frag.code.remove(index);
+        deleteInsn(frag, index);
     }
 
     /**
-     * Extract opcode from an instruction object
+     * Copy a list of operands, replacing one temp with another
+     * 
+     * @param temps  Operands
+     * @param keep   Temp to keep
+     * @param remove Temp to remove (by replacing)
+     * @return New operands
      */
-    private static String opcode(final Instruction insn) {
-        if (insn instanceof LabelInstruction || insn instanceof Comment) {
-            return "";
+    private static List<NameOfTemp> replaceTemp(final List<NameOfTemp> temps,
+            final NameOfTemp keep, final NameOfTemp remove) {
+        final List<NameOfTemp> result = new ArrayList<>();
+        for (final NameOfTemp t : temps) {
+            result.add(t.equals(remove) ? keep : t);
         }
 
-        return insn.format().split("\\s+")[0];
+        return result;
+    }
+
+    /**
+     * Get opcode of an instruction
+     * 
+     * @return Opcode (null for labels/comments/directives)
+     */
+    private static Opcode opcode(final Instruction insn) {
+        return SparcInsn.opcode(insn);
+    }
+
+    /**
+     * Find the next (non-deleted) instruction in a code fragment
+     * 
+     * @param frag  Code fragment
+     * @param index Current instruction index
+     * @return Index of next instruction (code size if there is none)
+     */
+    private static int nextIndex(final CodeFragment frag, final int index) {
+        int j = index + 1;
+        while (j < frag.code.size() && frag.code.get(j) == null) {
+            j++;
+        }
+
+        return j;
+    }
+
+    /**
+     * Find the previous (non-deleted) instruction in a code fragment
+     * 
+     * @param frag  Code fragment
+     * @param index Current instruction index
+     * @return Index of previous instruction (-1 if there is none)
+     */
+    private static int prevIndex(final CodeFragment frag, final int index) {
+        int j = index - 1;
+        while (j >= 0 && frag.code.get(j) == null) {
+            j--;
+        }
+
+        return j;
+    }
+
+    /**
+     * Take the lowest instruction index out of the worklist
+     * 
+     * @return Instruction index (-1 if the worklist is empty)
+     */
+    private int pollWorklist() {
+        final int index = m_worklist.nextSetBit(m_worklistMin);
+
+        if (index >= 0) {
+            m_worklist.clear(index);
+            m_worklistMin = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Queue an instruction, and the instructions around it, to be visited again
+     * 
+     * Rules look at the next instruction (and the CALL rule looks past the MOV
+     * following the call), so the two previous non-NOP instructions are queued.
+     * 
+     * @param frag  Code fragment
+     * @param index Instruction index (ignored if negative)
+     */
+    private void requeue(final CodeFragment frag, final int index) {
+        if (index < 0) {
+            return;
+        }
+
+        // Lowest index being queued
+        int low = index;
+
+        // Instruction itself (if it still exists) and the next one
+        if (frag.code.get(index) != null) {
+            m_worklist.set(index);
+        }
+
+        final int next = nextIndex(frag, index);
+        if (next < frag.code.size()) {
+            m_worklist.set(next);
+        }
+
+        // Previous instructions
+        for (int n = 0; n < 2; n++) {
+            low = prevIndex(frag, low);
+            while (low >= 0 && opcode(frag.code.get(low)) == Opcode.NOP) {
+                m_worklist.set(low);
+                low = prevIndex(frag, low);
+            }
+
+            if (low < 0) {
+                low = 0;
+                break;
+            }
+
+            m_worklist.set(low);
+        }
+
+        m_worklistMin = Math.min(m_worklistMin, low);
+    }
+
+    /**
+     * Replace an instruction in a code fragment, updating temp lifetimes
+     * 
+     * @param frag  Code fragment
+     * @param index Instruction index
+     * @param insn  New instruction (null to delete)
+     */
+    private void replaceInsn(final CodeFragment frag, final int index,
+            final Instruction insn) {
+        final Instruction old = frag.code.set(index, insn);
+
+        // Revisit this instruction and its neighbors
+        requeue(frag, index);
+
+        // Revisit the def/use sites of temps which were affected
+        for (final Lifetime life : Lifetime.update(frag, index, old, insn)) {
+            requeue(frag, life.startIndex);
+            requeue(frag, life.endIndex);
+        }
+    }
+
+    /**
+     * Delete an instruction from a code fragment, updating temp lifetimes.
+     * The instruction is left as null so other instruction indices stay valid.
+     * 
+     * @param frag  Code fragment
+     * @param index Instruction index
+     */
+    private void deleteInsn(final CodeFragment frag, final int index) {
+        replaceInsn(frag, index, null);
     }
 
     /**
@@ -18,29 +18,39 @@ import main.Arch;
 
 import assem.*;
 import tree.*;
+import codegen.arch.sparc.SparcInsn.Address;
+import codegen.arch.sparc.SparcInsn.Opcode;
 
 /**
  * Instruction selection for the SPARC architecture
  */
 public final class SparcSelect {
     // Selected assembly instructions
-    private static ArrayList<Instruction> s_insns = null;
+    private final ArrayList<Instruction> m_insns = new ArrayList<>();
     // Temp manager of currently processing fragment
-    private static TempManager s_tempMgr = null;
+    private final TempManager m_tempMgr;
 
     /**
-     * Perform instruction selection on an IR fragment.
+     * Constructor
+     * 
+     * @param tempMgr Temp manager of the fragment (so new temps can be created)
      */
-    public static void munch(final IRFragment frag) {
-        // Clear existing code
-        s_insns = new ArrayList<>();
+    private SparcSelect(final TempManager tempMgr) {
+        m_tempMgr = tempMgr;
+    }
 
+    /**
+     * Perform instruction selection on an IR fragment.
+     * 
+     * @return Code fragment
+     */
+    public static CodeFragment munch(final IRFragment frag) {
         // Link temp manager so new temps can be created
-        s_tempMgr = frag.tempMgr;
+        final SparcSelect select = new SparcSelect(frag.tempMgr);
 
         // Generate new code
         for (final Stm s : frag.linear) {
-            munchStm(s);
+            select.munchStm(s);
         }
 
         /**
@@ -52,7 +62,7 @@ public final class SparcSelect {
          * NOTE: Yes, this should be done at the point of linearization.
          * However, it is easier to do this when referencing the assembly instructions
          */
-        for (final Instruction insn : s_insns) {
+        for (final Instruction insn : select.m_insns) {
             for (final NameOfTemp t : Util.concatList(insn.def(), insn.use())) {
                 final String name = t.toString();
 
@@ -65,24 +75,23 @@ public final class SparcSelect {
                 }
 
                 // This temp is not new
-                if (s_tempMgr.isChild(t)) {
+                if (select.m_tempMgr.isChild(t)) {
                     continue;
                 }
 
                 // Add to manager
-                s_tempMgr.addChild(t);
+                select.m_tempMgr.addChild(t);
             }
         }
 
         // Package into fragment
-        final CodeFragment codeFrag = new SparcFragment(s_insns, frag);
-        codegen.Phase.getCodeFragments().add(codeFrag);
+        return new SparcFragment(select.m_insns, frag);
     }
 
     /**
      * "Munch"/tile IR statement
      */
-    private static void munchStm(final Stm stm) {
+    private void munchStm(final Stm stm) {
         if (stm instanceof CJUMP) {
             munchStmCJUMP((CJUMP) stm);
         } else if (stm instanceof EVAL) {
@@ -103,7 +112,7 @@ public final class SparcSelect {
     /**
      * "Munch"/tile IR expression
      */
-    private static NameOfTemp munchExp(final Exp exp, final Object parent) {
+    private NameOfTemp munchExp(final Exp exp, final Object parent) {
         if (exp instanceof BINOP) {
             return munchExpBINOP((BINOP) exp, parent);
         } else if (exp instanceof CALL) {
@@ -132,43 +141,39 @@ public final class SparcSelect {
     /**
      * "Munch"/tile CJUMP statement
      */
-    private static void munchStmCJUMP(final CJUMP stm) {
+    private void munchStmCJUMP(final CJUMP stm) {
         /**
          * Emit comparison
          */
-        emit(CodeGenUtil.operInsn("SS",
-                "cmp `s0, `s1",
-                "compare (%s, %s)",
-                munchExp(stm.left, stm),
-                munchExp(stm.right, stm)));
+        final NameOfTemp left = munchExp(stm.left, stm);
+        final NameOfTemp right = munchExp(stm.right, stm);
+
+        emit(new SparcInsn(Opcode.CMP,
+                String.format("compare (%s, %s)", left, right),
+                null,
+                Util.makeList(left, right)));
 
         /**
          * Emit conditional branch
          */
         switch (stm.relop) {
             case CJUMP.EQ:
-                emit(CodeGenUtil.branchInsn("be `j0",
-                        stm.iftrue));
+                emit(SparcInsn.branch(Opcode.BE, stm.iftrue));
                 break;
             case CJUMP.NE:
-                emit(CodeGenUtil.branchInsn("bne `j0",
-                        stm.iftrue));
+                emit(SparcInsn.branch(Opcode.BNE, stm.iftrue));
                 break;
             case CJUMP.LT:
-                emit(CodeGenUtil.branchInsn("bl `j0",
-                        stm.iftrue));
+                emit(SparcInsn.branch(Opcode.BL, stm.iftrue));
                 break;
             case CJUMP.GT:
-                emit(CodeGenUtil.branchInsn("bg `j0",
-                        stm.iftrue));
+                emit(SparcInsn.branch(Opcode.BG, stm.iftrue));
                 break;
             case CJUMP.LE:
-                emit(CodeGenUtil.branchInsn("ble `j0",
-                        stm.iftrue));
+                emit(SparcInsn.branch(Opcode.BLE, stm.iftrue));
                 break;
             case CJUMP.GE:
-                emit(CodeGenUtil.branchInsn("bge `j0",
-                        stm.iftrue));
+                emit(SparcInsn.branch(Opcode.BGE, stm.iftrue));
                 break;
             default:
                 Logger.addError("Codegen error: Bad CJUMP relop type: %d", stm.relop);
@@ -179,7 +184,7 @@ public final class SparcSelect {
         emitNop();
 
         // Fallthrough branch
-        emit(CodeGenUtil.branchInsn("ba `j0", stm.iffalse));
+        emit(SparcInsn.branch(Opcode.BA, stm.iffalse));
         // Delay slot
         emitNop();
     }
@@ -187,15 +192,15 @@ public final class SparcSelect {
     /**
      * "Munch"/tile EVAL statement
      */
-    private static void munchStmEVAL(final EVAL stm) {
+    private void munchStmEVAL(final EVAL stm) {
         munchExp(stm.exp, stm);
     }
 
     /**
      * "Munch"/tile JUMP statement
      */
-    private static void munchStmJUMP(final JUMP stm) {
-        emit(CodeGenUtil.branchInsn("ba `j0", stm.targets));
+    private void munchStmJUMP(final JUMP stm) {
+        emit(new SparcInsn(Opcode.BA, Address.NONE, null, null, null, stm.targets));
         // Delay slot
         emitNop();
     }
@@ -203,14 +208,14 @@ public final class SparcSelect {
     /**
      * "Munch"/tile LABEL statement
      */
-    private static void munchStmLABEL(final LABEL stm) {
+    private void munchStmLABEL(final LABEL stm) {
         emit(new LabelInstruction(stm.label));
     }
 
     /**
      * "Munch"/tile MOVE statement
      */
-    private static void munchStmMOVE(final MOVE stm) {
+    private void munchStmMOVE(final MOVE stm) {
         NameOfTemp lhs;
         NameOfTemp rhs;
 
@@ -222,21 +227,19 @@ public final class SparcSelect {
          * Move to temp
          */
         if (stm.dst instanceof TEMP) {
-            emit(CodeGenUtil.operInsn("SD",
-                    "mov `s0, `d0",
-                    "%s -> %s",
-                    lhs,
-                    rhs));
+            emit(SparcInsn.op(Opcode.MOV,
+                    String.format("%s -> %s", lhs, rhs),
+                    rhs,
+                    lhs));
         }
         /**
          * Move to memory
          */
         else if (stm.dst instanceof MEM) {
-            emit(CodeGenUtil.operInsn("SD",
-                    "st `s0, [`d0]",
-                    "%s -> %s",
+            emit(SparcInsn.store(Address.REG,
+                    String.format("%s -> %s", lhs, rhs),
                     lhs,
-                    rhs));
+                    Util.singleList(rhs)));
         } else {
             Logger.addError("Codegen error: Bad MOVE stm in IR: %s", stm);
         }
@@ -245,7 +248,7 @@ public final class SparcSelect {
     /**
      * "Munch"/tile SEQ statement
      */
-    private static void munchStmSEQ(final SEQ stm) {
+    private void munchStmSEQ(final SEQ stm) {
         munchStm(stm.left);
         munchStm(stm.right);
     }
@@ -253,42 +256,38 @@ public final class SparcSelect {
     /**
      * "Munch"/tile BINOP expression
      */
-    private static NameOfTemp munchExpBINOP(final BINOP exp, final Object parent) {
+    private NameOfTemp munchExpBINOP(final BINOP exp, final Object parent) {
         // Get temp for expression result
-        final TEMP t = s_tempMgr.create();
+        final TEMP t = m_tempMgr.create();
+
+        // Operands
+        final NameOfTemp left = munchExp(exp.left, exp);
+        final NameOfTemp right = munchExp(exp.right, exp);
 
         switch (exp.binop) {
             case BINOP.PLUS:
-                emit(CodeGenUtil.operInsn("SSD",
-                        "add `s0, `s1, `d0",
-                        "(%s + %s) -> %s",
-                        munchExp(exp.left, exp),
-                        munchExp(exp.right, exp),
-                        t.temp));
+                emit(SparcInsn.op(Opcode.ADD,
+                        String.format("(%s + %s) -> %s", left, right, t.temp),
+                        t.temp,
+                        left, right));
                 break;
             case BINOP.MINUS:
-                emit(CodeGenUtil.operInsn("SSD",
-                        "sub `s0, `s1, `d0",
-                        "(%s - %s) -> %s",
-                        munchExp(exp.left, exp),
-                        munchExp(exp.right, exp),
-                        t.temp));
+                emit(SparcInsn.op(Opcode.SUB,
+                        String.format("(%s - %s) -> %s", left, right, t.temp),
+                        t.temp,
+                        left, right));
                 break;
             case BINOP.MUL:
-                emit(CodeGenUtil.operInsn("SSD",
-                        "smul `s0, `s1, `d0",
-                        "(%s * %s) -> %s",
-                        munchExp(exp.left, exp),
-                        munchExp(exp.right, exp),
-                        t.temp));
+                emit(SparcInsn.op(Opcode.SMUL,
+                        String.format("(%s * %s) -> %s", left, right, t.temp),
+                        t.temp,
+                        left, right));
                 break;
             case BINOP.XOR:
-                emit(CodeGenUtil.operInsn("SSD",
-                        "xor `s0, `s1, `d0",
-                        "(%s ^ %s) -> %s",
-                        munchExp(exp.left, exp),
-                        munchExp(exp.right, exp),
-                        t.temp));
+                emit(SparcInsn.op(Opcode.XOR,
+                        String.format("(%s ^ %s) -> %s", left, right, t.temp),
+                        t.temp,
+                        left, right));
                 break;
             default:
                 Logger.addError("Codegen error: Bad BINOP operator in IR: %s", exp);
@@ -301,32 +300,59 @@ public final class SparcSelect {
     /**
      * "Munch"/tile CALL expression
      */
-    private static NameOfTemp munchExpCALL(final CALL exp, final Object parent) {
+    private NameOfTemp munchExpCALL(final CALL exp, final Object parent) {
         // Get temp for expression result
-        final TEMP t = s_tempMgr.create();
+        final TEMP t = m_tempMgr.create();
+
+        // Registers holding function arguments
+        final List<NameOfTemp> argRegs = new ArrayList<>();
+
+        // Function address (for calls through a vtable)
+        final NameOfTemp target = !(exp.func instanceof NAME)
+                ? munchExp(exp.func, exp)
+                : null;
 
         // Load function arguments
         final List<Exp> args = exp.subcomponents();
         for (int i = 1; i < args.size(); i++) {
-            emit(CodeGenUtil.operInsn("SD",
-                    "mov `s0, `d0",
-                    "%s -> %s",
-                    munchExp(args.get(i), exp),
-                    ((TEMP) Arch.get().getFormalAccessAsCaller(i - 1)).temp));
+            final NameOfTemp reg = ((TEMP) Arch.get().getFormalAccessAsCaller(i - 1)).temp;
+            argRegs.add(reg);
+
+            final NameOfTemp arg = munchExp(args.get(i), exp);
+
+            emit(SparcInsn.op(Opcode.MOV,
+                    String.format("%s -> %s", arg, reg),
+                    reg,
+                    arg));
         }
 
-        // Call function
-        emit(CodeGenUtil.branchInsn("call `j0", munchExp(exp.func, exp)));
+        // Call function (arguments are marked as used by the call)
+        if (target != null) {
+            emit(new SparcInsn(Opcode.CALL,
+                    Address.REG,
+                    String.format("*(%s)", target),
+                    null,
+                    Util.concatList(Util.singleList(target), argRegs),
+                    null));
+        } else {
+            emit(new SparcInsn(Opcode.CALL,
+                    Address.NONE,
+                    null,
+                    null,
+                    argRegs,
+                    Util.singleList(new NameOfLabel(munchExp(exp.func, exp).toString()))));
+        }
         // Delay slot
         emitNop();
 
         // Get result (if it isn't being discarded)
         if (parent != null && !(parent instanceof EVAL)) {
-            emit(CodeGenUtil.operInsn("SD",
-                    "mov `s0, `d0",
-                    "%s -> %s",
-                    ((TEMP) Arch.get().getReturnAccessAsCaller()).temp,
-                    t.temp));
+            final NameOfTemp ret = ((TEMP) Arch.get().getReturnAccessAsCaller()).temp;
+
+            emit(SparcInsn.op(Opcode.MOV,
+                    String.format("%s -> %s", ret, t.temp),
+                    t.temp,
+                    ret));
         }
 
         return t.temp;
@@ -335,17 +361,18 @@ public final class SparcSelect {
     /**
      * "Munch"/tile CONST expression
      */
-    private static NameOfTemp munchExpCONST(final CONST exp, final Object parent) {
+    private NameOfTemp munchExpCONST(final CONST exp, final Object parent) {
         // Load to temporary register
-        final TEMP t = s_tempMgr.create();
+        final TEMP t = m_tempMgr.create();
         // Constant literal value (unsigned)
         final long value = Integer.toUnsignedLong(exp.value);
 
-        emit(CodeGenUtil.operInsn("SD",
-                "set `s0, `d0",
-                "%s -> %s",
-                new NameOfTemp(Long.toString(value)),
-                t.temp));
+        final NameOfTemp imm = SparcInsn.immediate(value);
+
+        emit(SparcInsn.op(Opcode.SET,
+                String.format("%s -> %s", imm, t.temp),
+                t.temp,
+                imm));
 
         return t.temp;
     }
@@ -353,7 +380,7 @@ public final class SparcSelect {
     /**
      * "Munch"/tile MEM expression
      */
-    private static NameOfTemp munchExpMEM(final MEM exp, final Object parent) {
+    private NameOfTemp munchExpMEM(final MEM exp, final Object parent) {
         if (exp.exp instanceof TEMP || exp.exp instanceof BINOP || exp.exp instanceof MEM) {
             // Get data address
             final NameOfTemp addr = munchExp(exp.exp, exp);
@@ -376,13 +403,12 @@ public final class SparcSelect {
 
             if (load) {
                 // Load data into temp
-                final TEMP t = s_tempMgr.create();
+                final TEMP t = m_tempMgr.create();
 
-                emit(CodeGenUtil.operInsn("SD",
-                        "ld [`s0], `d0",
-                        "*(%s) -> %s",
-                        addr,
-                        t.temp));
+                emit(SparcInsn.load(Address.REG,
+                        String.format("*(%s) -> %s", addr, t.temp),
+                        t.temp,
+                        Util.singleList(addr)));
 
                 return t.temp;
             }
@@ -397,14 +423,29 @@ public final class SparcSelect {
     /**
      * "Munch"/tile NAME expression
      */
-    private static NameOfTemp munchExpNAME(final NAME exp, final Object parent) {
-        return new NameOfTemp(exp.label.toString());
+    private NameOfTemp munchExpNAME(final NAME exp, final Object parent) {
+        final NameOfTemp label = new NameOfTemp(exp.label.toString());
+
+        // Called functions are referenced by their label
+        if (parent instanceof CALL && ((CALL) parent).func == exp) {
+            return label;
+        }
+
+        // Otherwise the label's address is needed (i.e. vtables)
+        final TEMP t = m_tempMgr.create();
+
+        emit(SparcInsn.op(Opcode.SET,
+                String.format("%s -> %s", label, t.temp),
+                t.temp,
+                label));
+
+        return t.temp;
     }
 
     /**
      * "Munch"/tile RET expression
      */
-    private static NameOfTemp munchExpRET(final RET exp, final Object parent) {
+    private NameOfTemp munchExpRET(final RET exp, final Object parent) {
         munchStm(exp.stm);
         return munchExp(exp.exp, exp);
     }
@@ -412,7 +453,7 @@ public final class SparcSelect {
     /**
      * "Munch"/tile BINOP expression
      */
-    private static NameOfTemp munchExpTEMP(final TEMP exp, final Object parent) {
+    private NameOfTemp munchExpTEMP(final TEMP exp, final Object parent) {
         return exp.temp;
     }
 
@@ -420,15 +461,15 @@ public final class SparcSelect {
      * Emit instruction
      * (Exists to improve readability)
      */
-    private static void emit(final Instruction insn) {
-        s_insns.add(insn);
+    private void emit(final Instruction insn) {
+        m_insns.add(insn);
     }
 
     /**
      * Emit no-op instruction
      * (Used to waste delay slot)
      */
-    private static void emitNop() {
-        emit(new OperationInstruction("nop", "(do nothing in delay slot)"));
+    private void emitNop() {
+        emit(new SparcInsn(Opcode.NOP, "(do nothing in delay slot)", null, null));
     }
 }
@@ -13,35 +13,35 @@ import codegen.CodeFragment;
 import codegen.arch.sparc.SparcArch;
 import translate.IRFragment;
 
+import assem.Instruction;
 import tree.*;
 
 /**
  * Interface for compiler targets.
- * Also is a singleton to manage its own lifetime
+ * Each compilation owns its target (see CompilationContext)
  */
 public abstract class Arch {
-    private static Arch s_instance = null;
-
     /**
-     * Setup target architecture based on the compiler configuration
+     * Create target architecture based on the compiler configuration
+     * 
+     * @return Target (null if unimplemented)
      */
-    public static void initialize() {
+    public static Arch create() {
         switch (Config.getTargetArch()) {
             case Sparc:
-                s_instance = new SparcArch();
-                break;
+                return new SparcArch();
             default:
                 Logger.logVerboseLn("Unimplemented architecture: %s",
                         Config.getTargetArch().name());
+                return null;
         }
     }
 
     /**
-     * Access target architecture
+     * Access target architecture of the current compilation
      */
     public static Arch get() {
-        assert s_instance != null : "Please call initialize";
-        return s_instance;
+        return CompilationContext.current().getArch();
     }
 
     /**
@@ -99,13 +99,64 @@ public abstract class Arch {
      */
     abstract public List<Exp> getAllLocalRegisters();
 
+    /**
+     * Access all registers which can be allocated in a code fragment
+     * (in order of preference)
+     */
+    abstract public List<Exp> getAllocatableRegisters(final CodeFragment frag);
+
+    /**
+     * Get labels which an instruction may branch to (excluding function calls)
+     */
+    abstract public List<NameOfLabel> getInsnTargets(final Instruction insn);
+
+    /**
+     * Check whether execution can continue to the instruction after this one
+     */
+    abstract public boolean insnFallsThrough(final Instruction insn);
+
+    /**
+     * Check whether an instruction only copies one temp to another
+     */
+    abstract public boolean isMoveInsn(final Instruction insn);
+
+    /**
+     * Get temps which are read by an instruction
+     */
+    abstract public List<NameOfTemp> getInsnReads(final Instruction insn);
+
+    /**
+     * Get temps which are written by an instruction
+     */
+    abstract public List<NameOfTemp> getInsnWrites(final Instruction insn);
+
+    /**
+     * Create instruction to load a stack variable into a temp
+     */
+    abstract public Instruction loadLocalInsn(final NameOfTemp dst, final int i);
+
+    /**
+     * Create instruction to store a temp into a stack variable
+     */
+    abstract public Instruction storeLocalInsn(final NameOfTemp src, final int i);
+
+    /**
+     * Create copy of an instruction with different operands
+     */
+    abstract public Instruction copyInsn(final Instruction insn, final List<NameOfTemp> dst,
+            final List<NameOfTemp> src);
+
     /**
      * Perform instruction selection on an IR fragment
+     * 
+     * @return Code fragment
      */
-    abstract public void insnSelect(final IRFragment frag);
+    abstract public CodeFragment insnSelect(final IRFragment frag);
 
     /**
-     * Perform optimizations on a code fragment
+     * Perform optimizations on a code fragment (until nothing can be changed)
+     * 
+     * @return Whether any optimizations have occurred
      */
     abstract public boolean optimize(final CodeFragment frag);
 }
@@ -0,0 +1,345 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import check.SymbolTable;
+import codegen.CodeFragment;
+import translate.Canonicalizer;
+import translate.IRFragment;
+import translate.Inliner;
+import translate.LabelManager;
+import translate.TempManager;
+
+import syntax.Program;
+
+/**
+ * State of one compilation (one source file).
+ * 
+ * The phases keep no state of their own, everything they produce is stored
+ * here, so any number of compilations can run in the same JVM at once.
+ * 
+ * Main creates a context for each source file, and passes it to every phase.
+ * While the compilation runs, the context is also bound to the thread(s)
+ * running it (see run/parallelMap), so code deep inside the phases (visitors,
+ * Logger, Arch) can reach it through current() without passing it everywhere.
+ */
+public final class CompilationContext {
+    // Context of the compilation running on each thread
+    private static final ThreadLocal<CompilationContext> s_current = new ThreadLocal<>();
+    // Pool for processing fragments in parallel (shared by all compilations)
+    private static ForkJoinPool s_pool = null;
+
+    // Source file path
+    private final String m_filePath;
+    // Errors found while compiling the source file (fragments may add them in parallel)
+    private final List<Logger.Error> m_errorList = Collections.synchronizedList(new LinkedList<>());
+    // Target architecture
+    private final Arch m_arch;
+    // Compile cost metrics (null if not collected)
+    private final Metrics m_metrics;
+
+    // Root program AST node (parse phase)
+    private Program m_astRoot = null;
+    // Symbol table for program (check phase)
+    private SymbolTable m_symbolTable = null;
+
+    // Program IR fragments (translate phase)
+    private final ArrayList<IRFragment> m_irFragments = new ArrayList<>();
+    // Receives IR fragments as soon as they are translated, instead of the list
+    // (streaming pipeline, null otherwise)
+    private Consumer<IRFragment> m_irFragmentSink = null;
+    // Label manager shared by all functions (translate phase)
+    private final LabelManager m_labelMgr = new LabelManager();
+    // Currently processing method's temp manager (translate phase)
+    private TempManager m_currTempMgr = null;
+    // Canonicalizer (translate phase)
+    private final Canonicalizer m_canonicalizer = new Canonicalizer();
+    // Method inliner (translate phase)
+    private final Inliner m_inliner = new Inliner();
+
+    // Generated assembly code fragments (codegen phase)
+    private final ArrayList<CodeFragment> m_codeFragments = new ArrayList<>();
+
+    /**
+     * Constructor
+     * 
+     * @param filePath Source file path
+     */
+    public CompilationContext(final String filePath) {
+        m_filePath = filePath;
+        m_arch = Arch.create();
+        m_metrics = Config.isMetrics() ? new Metrics(filePath) : null;
+    }
+
+    /**
+     * Access context of the compilation running on this thread
+     */
+    public static CompilationContext current() {
+        final CompilationContext ctx = s_current.get();
+        assert ctx != null : "No compilation is running on this thread";
+        return ctx;
+    }
+
+    /**
+     * Run an action in this context (on the calling thread)
+     * 
+     * @param action Action
+     */
+    public void run(final Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Apply a function to every item (usually fragments) in parallel, in this
+     * context. Items are processed on the fork-join pool, unless there are too
+     * few of them, or only one job is allowed (see Config.getJobs).
+     * 
+     * @param items Items
+     * @param fn    Function
+     * @return Results, in the same order as the items
+     */
+    public <T, R> List<R> parallelMap(final List<T> items, final Function<? super T, ? extends R> fn) {
+        final List<R> results = new ArrayList<>(items.size());
+
+        if (items.size() < 2 || Config.getJobs() < 2) {
+            for (final T item : items) {
+                results.add(fn.apply(item));
+            }
+
+            return results;
+        }
+
+        final List<Callable<R>> tasks = new ArrayList<>(items.size());
+        for (final T item : items) {
+            tasks.add(() -> call(() -> fn.apply(item)));
+        }
+
+        for (final Future<R> result : getPool().invokeAll(tasks)) {
+            try {
+                results.add(result.get());
+            } catch (final ExecutionException e) {
+                // Rethrow as if the function was called here
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Perform an action on every item (usually fragments) in parallel, in this
+     * context (see parallelMap)
+     * 
+     * @param items  Items
+     * @param action Action
+     */
+    public <T> void parallelForEach(final List<T> items, final Consumer<? super T> action) {
+        parallelMap(items, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+
+    /**
+     * Call a function with this context bound to the calling thread
+     * 
+     * @param fn Function
+     * @return Result of the function
+     */
+    private <R> R call(final Supplier<R> fn) {
+        // Context which was bound before (restored afterwards)
+        final CompilationContext outer = s_current.get();
+        s_current.set(this);
+
+        try {
+            return fn.get();
+        } finally {
+            if (outer != null) {
+                s_current.set(outer);
+            } else {
+                s_current.remove();
+            }
+        }
+    }
+
+    /**
+     * Access pool for processing fragments in parallel
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (s_pool == null) {
+            s_pool = new ForkJoinPool(Config.getJobs());
+        }
+
+        return s_pool;
+    }
+
+    /**
+     * Get source file path
+     */
+    public String getFilePath() {
+        return m_filePath;
+    }
+
+    /**
+     * Get assembly file path
+     */
+    public String getAsmFilePath() {
+        return m_filePath.replace(".java", ".s");
+    }
+
+    /**
+     * Access errors found while compiling the source file
+     */
+    List<Logger.Error> getErrorList() {
+        return m_errorList;
+    }
+
+    /**
+     * Access target architecture
+     */
+    public Arch getArch() {
+        return m_arch;
+    }
+
+    /**
+     * Access compile cost metrics
+     * 
+     * @return Metrics (null if not collected)
+     */
+    public Metrics getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * Access root program AST node
+     */
+    public Program getAstRoot() {
+        return m_astRoot;
+    }
+
+    /**
+     * Set root program AST node
+     */
+    public void setAstRoot(final Program root) {
+        m_astRoot = root;
+    }
+
+    /**
+     * Access program symbol table
+     */
+    public SymbolTable getSymbolTable() {
+        return m_symbolTable;
+    }
+
+    /**
+     * Set program symbol table
+     */
+    public void setSymbolTable(final SymbolTable table) {
+        m_symbolTable = table;
+    }
+
+    /**
+     * Access program IR fragments
+     */
+    public ArrayList<IRFragment> getIRFragments() {
+        return m_irFragments;
+    }
+
+    /**
+     * Add translated IR fragment (or pass it straight to the sink, if there is one)
+     */
+    public void addIRFragment(final IRFragment frag) {
+        if (m_irFragmentSink != null) {
+            m_irFragmentSink.accept(frag);
+        } else {
+            m_irFragments.add(frag);
+        }
+    }
+
+    /**
+     * Get receiver of IR fragments as soon as they are translated
+     * (null if they are collected in the list)
+     */
+    public Consumer<IRFragment> getIRFragmentSink() {
+        return m_irFragmentSink;
+    }
+
+    /**
+     * Set receiver of IR fragments as soon as they are translated
+     * (null to collect them in the list again)
+     */
+    public void setIRFragmentSink(final Consumer<IRFragment> sink) {
+        m_irFragmentSink = sink;
+    }
+
+    /**
+     * Access label manager
+     */
+    public LabelManager getLabelMgr() {
+        return m_labelMgr;
+    }
+
+    /**
+     * Access current temp manager
+     */
+    public TempManager getCurrTempMgr() {
+        return m_currTempMgr;
+    }
+
+    /**
+     * Set current temp manager
+     */
+    public void setCurrTempMgr(final TempManager tempMgr) {
+        m_currTempMgr = tempMgr;
+    }
+
+    /**
+     * Access canonicalizer
+     */
+    public Canonicalizer getCanonicalizer() {
+        return m_canonicalizer;
+    }
+
+    /**
+     * Access method inliner
+     */
+    public Inliner getInliner() {
+        return m_inliner;
+    }
+
+    /**
+     * Access program code fragments
+     */
+    public ArrayList<CodeFragment> getCodeFragments() {
+        return m_codeFragments;
+    }
+}
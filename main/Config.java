@@ -22,12 +22,47 @@ public final class Config {
         PowerPC
     }
 
+    /**
+     * Register allocator
+     */
+    public enum RegAllocType {
+        LinearScan,
+        Coloring
+    }
+
+    /**
+     * Amount of verbose output (each level includes the ones before it)
+     */
+    public enum VerboseLevel {
+        // Nothing
+        Off,
+        // Phase info (IR/assembly of each fragment, errors, etc.)
+        Phase,
+        // Every decision made on every fragment (lifetimes, register
+        // allocations, optimizations)
+        Trace
+    }
+
     // Whether to run all test cases
     private static boolean s_test = false;
-    // Whether to dump compiler phase info
-    private static boolean s_verbose = false;
+    // How much compiler phase info to dump
+    private static VerboseLevel s_verbose = VerboseLevel.Off;
+    // Whether to serve compile requests from stdin
+    private static boolean s_daemon = false;
+    // Whether to stream each method through the back end as it is translated
+    private static boolean s_stream = false;
     // Target architecture (default SPARC)
     private static ArchType s_arch = ArchType.Sparc;
+    // Register allocator (default linear scan)
+    private static RegAllocType s_regAlloc = RegAllocType.LinearScan;
+    // Number of files to compile in parallel (default one per core)
+    private static int s_jobs = Runtime.getRuntime().availableProcessors();
+    // Where to write compile cost metrics (null if not collected)
+    private static String s_metricsPath = null;
+    // Size budget of inlined methods, in IR nodes (zero to disable inlining)
+    private static int s_inlineBudget = 16;
+    // Whether to propagate constants through the linear IR (see ConstantPropagator)
+    private static boolean s_constProp = true;
 
     /**
      * Load configuration from system properties
@@ -37,7 +72,30 @@ public final class Config {
          * Debug configuration
          */
         s_test = isPropertyDefined("test");
-        s_verbose = isPropertyDefined("verbose");
+        if (isPropertyDefined("verbose")) {
+            // Everything by default, or "-Dverbose=phase" for less
+            s_verbose = System.getProperty("verbose").equalsIgnoreCase("phase")
+                    ? VerboseLevel.Phase
+                    : VerboseLevel.Trace;
+        }
+
+        /**
+         * Daemon mode
+         */
+        s_daemon = isPropertyDefined("daemon");
+
+        /**
+         * Streaming pipeline
+         */
+        s_stream = isPropertyDefined("stream");
+
+        /**
+         * Compile cost metrics
+         */
+        if (isPropertyDefined("metrics")) {
+            final String path = System.getProperty("metrics");
+            s_metricsPath = path.isEmpty() ? "metrics.json" : path;
+        }
 
         /**
          * Target architecture
@@ -55,6 +113,58 @@ public final class Config {
                 s_arch = name2arch.get(name);
             }
         }
+
+        /**
+         * Register allocator
+         */
+        if (isPropertyDefined("regalloc")) {
+            final Map<String, RegAllocType> name2alloc = Map.of(
+                    "linear", RegAllocType.LinearScan,
+                    "coloring", RegAllocType.Coloring);
+
+            final String name = System.getProperty("regalloc").toLowerCase();
+
+            if (!name2alloc.containsKey(name)) {
+                Logger.logVerboseLn("Config error: Invalid register allocator %s", name);
+            } else {
+                s_regAlloc = name2alloc.get(name);
+            }
+        }
+
+        /**
+         * Method inlining
+         */
+        if (isPropertyDefined("inline")) {
+            try {
+                s_inlineBudget = Math.max(0, Integer.parseInt(System.getProperty("inline")));
+            } catch (final NumberFormatException e) {
+                Logger.logVerboseLn("Config error: Invalid inline budget %s", System.getProperty("inline"));
+            }
+        }
+
+        /**
+         * Constant propagation ("-Dsccp=0" to disable)
+         */
+        if (isPropertyDefined("sccp")) {
+            final String value = System.getProperty("sccp");
+            s_constProp = !value.equals("0") && !value.equalsIgnoreCase("false");
+        }
+
+        /**
+         * Parallel compilation
+         */
+        if (isPropertyDefined("jobs")) {
+            try {
+                s_jobs = Math.max(1, Integer.parseInt(System.getProperty("jobs")));
+            } catch (final NumberFormatException e) {
+                Logger.logVerboseLn("Config error: Invalid job count %s", System.getProperty("jobs"));
+            }
+        }
+
+        // Verbose output of parallel compilations would be interleaved
+        if (isVerbose()) {
+            s_jobs = 1;
+        }
     }
 
     /**
@@ -68,7 +178,45 @@ public final class Config {
      * Whether to dump compiler phase info
      */
     public static boolean isVerbose() {
-        return s_verbose;
+        return s_verbose != VerboseLevel.Off;
+    }
+
+    /**
+     * Whether to dump compiler phase info at the specified level
+     * 
+     * @param level Verbose level
+     */
+    public static boolean isVerbose(final VerboseLevel level) {
+        return level != VerboseLevel.Off && s_verbose.compareTo(level) >= 0;
+    }
+
+    /**
+     * Whether to run as a daemon (serve compile requests from stdin)
+     */
+    public static boolean isDaemon() {
+        return s_daemon;
+    }
+
+    /**
+     * Whether to stream each method through the back end as it is translated
+     * (instead of running each phase over the whole program)
+     */
+    public static boolean isStream() {
+        return s_stream;
+    }
+
+    /**
+     * Whether to collect compile cost metrics
+     */
+    public static boolean isMetrics() {
+        return s_metricsPath != null;
+    }
+
+    /**
+     * Get path of the metrics (JSON) file
+     */
+    public static String getMetricsPath() {
+        return s_metricsPath;
     }
 
     /**
@@ -78,6 +226,34 @@ public final class Config {
         return s_arch;
     }
 
+    /**
+     * Get compiler register allocator
+     */
+    public static RegAllocType getRegAlloc() {
+        return s_regAlloc;
+    }
+
+    /**
+     * Get size budget of inlined methods, in IR nodes (zero if disabled)
+     */
+    public static int getInlineBudget() {
+        return s_inlineBudget;
+    }
+
+    /**
+     * Check whether constants are propagated through the linear IR
+     */
+    public static boolean isConstProp() {
+        return s_constProp;
+    }
+
+    /**
+     * Get number of files to compile in parallel
+     */
+    public static int getJobs() {
+        return s_jobs;
+    }
+
     /**
      * Check if a system property with the given name is defined
      * 
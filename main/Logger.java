@@ -7,26 +7,32 @@
 
 package main;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.LinkedList;
+import java.io.Writer;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import parse.javacc.TokenMgrError;
 import parse.javacc.ParseException;
 
+import main.Config.VerboseLevel;
+
 /**
  * Compiler error logger
  * 
- * Errors are collected over time and displayed only at the end of program
- * execution
+ * Errors are collected over time (in the current compilation's context) and
+ * displayed only at the end of the compilation
  */
 public final class Logger {
     /**
      * General compiler error (lexer, parser, semantics, etc.)
      */
-    private static class Error {
+    static final class Error {
         // Line in the source file where the error occurred
         public final int line;
         // Column in the source-file where the error occurred
@@ -45,68 +51,69 @@ public final class Logger {
         }
     }
 
-    // File path of the current source file
-    private static String s_filePath = null;
-    // File stream for verbose output
-    private static PrintStream s_verboseFileStrm = null;
-    // Whether to terminate log calls with a newline
-    private static boolean s_logNewLine = true;
-    // Name of current compiler phase
-    private static String s_currPhase = null;
-    // List of errors found while compiling the current source file
-    private static final LinkedList<Error> s_errorList = new LinkedList<>();
+    // Size of the verbose log file buffer
+    private static final int sc_verboseBufferSize = 64 * 1024;
+    // Line separating sections of the verbose log
+    private static final String sc_verboseSeparator = "=".repeat(80);
+    // Buffered verbose log file (opened on first use)
+    private static Writer s_verboseSink = null;
+    // Whether the verbose log file couldn't be opened
+    private static boolean s_verboseFailed = false;
     // Regular expression for the lexer error strings
     private static final Pattern s_lexErrPattern = Pattern.compile(".*Lexical error at line (\\d+), column (\\d+)");
 
     /**
-     * Begin logging for a new source file
-     * 
-     * @param filePath Source file path
+     * Begin logging for the current compilation
      */
-    public static void begin(final String filePath) {
-        assert s_filePath == null : "Called begin twice!";
-
-        // Setup fields for new context
-        s_filePath = filePath;
-        s_errorList.clear();
-
-        logVerboseLn("begin %s", s_filePath);
+    public static void begin() {
+        logVerboseLn("begin %s", CompilationContext.current().getFilePath());
     }
 
     /**
-     * End logging for the current source file
+     * End logging for the current compilation, and display the error log
      */
     public static void end() {
-        assert s_filePath != null : "End not allowed without begin.";
+        end(System.out, System.err);
+    }
+
+    /**
+     * End logging for the current compilation
+     * 
+     * @param out Stream for the error count
+     * @param err Stream for the errors
+     */
+    public static void end(final PrintStream out, final PrintStream err) {
+        final String filePath = CompilationContext.current().getFilePath();
+        final List<Error> errorList = CompilationContext.current().getErrorList();
 
-        logVerboseLn("end %s", s_filePath);
+        logVerboseLn("end %s", filePath);
+        Metrics.finish(errorList.size());
         for (int i = 0; i < 5; i++) {
             logVerboseSeparator();
         }
         logVerboseLn("");
+        flushVerbose();
 
         // Show error count
-        println("filename=%s, errors=%d", s_filePath, s_errorList.size());
+        out.printf("filename=%s, errors=%d%n", filePath, errorList.size());
 
         // Log errors
-        for (final Error err : s_errorList) {
-            if (err.column != -1 && err.line != -1) {
-                errln(String.format("%s:%d:%d: %s", s_filePath, err.line, err.column, err.msg));
+        for (final Error e : errorList) {
+            if (e.column != -1 && e.line != -1) {
+                err.printf("%s:%d:%d: %s%n", filePath, e.line, e.column, e.msg);
             } else {
-                errln(String.format("%s: %s", s_filePath, err.msg));
+                err.printf("%s: %s%n", filePath, e.msg);
             }
         }
 
-        // Clear fields
-        s_filePath = null;
-        s_errorList.clear();
+        errorList.clear();
     }
 
     /**
      * Check whether the compiler is in an error state (> 0 errors)
      */
     public static boolean isError() {
-        return !s_errorList.isEmpty();
+        return !CompilationContext.current().getErrorList().isEmpty();
     }
 
     /**
@@ -119,7 +126,7 @@ public final class Logger {
      */
     public static void addError(final int line, final int col, final String fmt, final Object... args) {
         final Error err = new Error(line, col, fmt, args);
-        s_errorList.add(err);
+        CompilationContext.current().getErrorList().add(err);
     }
 
     /**
@@ -174,10 +181,11 @@ public final class Logger {
      * @param phase Name of phase
      */
     public static void registerPhase(final String phase) {
-        s_currPhase = phase;
         logVerboseSeparator();
-        logVerboseLn("[Entering %s phase]", s_currPhase);
+        logVerboseLn("[Entering %s phase]", phase);
         logVerboseSeparator();
+
+        Metrics.beginPhase(phase);
     }
 
     /**
@@ -189,8 +197,9 @@ public final class Logger {
      * @param args Format arguments
      */
     public static void logVerbose(final String fmt, final Object... args) {
-        s_logNewLine = false;
-        logVerboseInner(fmt, args);
+        if (Config.isVerbose(VerboseLevel.Phase)) {
+            writeVerbose(String.format(fmt, args), false);
+        }
     }
 
     /**
@@ -202,75 +211,101 @@ public final class Logger {
      * @param args Format arguments
      */
     public static void logVerboseLn(final String fmt, final Object... args) {
-        s_logNewLine = true;
-        logVerboseInner(fmt, args);
+        if (Config.isVerbose(VerboseLevel.Phase)) {
+            writeVerbose(String.format(fmt, args), true);
+        }
     }
 
     /**
      * Log verbose (usually phase-specific) information to the console.
-     * Nothing is printed if the system property "dumpPhases" is not set
+     * The message is only built if it is going to be printed.
      * 
-     * @param fmt  Message (format string)
-     * @param args Format arguments
+     * @param msg Message
      */
-    private static void logVerboseInner(final String fmt, final Object... args) {
-        // Verbose output disabled
-        if (!Config.isVerbose()) {
-            return;
-        }
-
-        // Open log file stream if necessary
-        if (s_verboseFileStrm == null) {
-            try {
-                s_verboseFileStrm = new PrintStream("verbose.txt");
-            } catch (FileNotFoundException e) {
-                errln("Cannot open verbose.txt for logging!");
-            }
+    public static void logVerboseLn(final Supplier<String> msg) {
+        if (Config.isVerbose(VerboseLevel.Phase)) {
+            writeVerbose(msg.get(), true);
         }
+    }
 
-        // Backup reference to stdout stream
-        final PrintStream stdout = System.out;
+    /**
+     * Check whether trace output (-Dverbose, but not -Dverbose=phase) is on.
+     * Use this to skip building trace messages in loops/hot paths.
+     */
+    public static boolean isTracing() {
+        return Config.isVerbose(VerboseLevel.Trace);
+    }
 
-        // Temporarily redirect the print function
-        System.setOut(s_verboseFileStrm);
-        if (s_logNewLine) {
-            println(fmt, args);
-        } else {
-            print(fmt, args);
+    /**
+     * Log trace information (every decision made on a fragment).
+     * The message is only built if it is going to be printed.
+     * 
+     * @param msg Message
+     */
+    public static void logTraceLn(final Supplier<String> msg) {
+        if (Config.isVerbose(VerboseLevel.Trace)) {
+            writeVerbose(msg.get(), true);
         }
-        System.setOut(stdout);
     }
 
     /**
-     * Write separator line to verbose log
+     * Write message to the verbose log file (verbose.txt).
+     * The file is buffered, and flushed at the end of every compilation.
+     * 
+     * @param msg     Message
+     * @param newLine Whether to terminate the message with a newline
      */
-    private static void logVerboseSeparator() {
-        // Print lines to separate file output
-        for (int j = 0; j < 80; j++) {
-            logVerbose("=");
+    private static synchronized void writeVerbose(final String msg, final boolean newLine) {
+        // Open log file if necessary
+        if (s_verboseSink == null) {
+            if (s_verboseFailed) {
+                return;
+            }
+
+            try {
+                s_verboseSink = new BufferedWriter(new FileWriter("verbose.txt"), sc_verboseBufferSize);
+            } catch (final IOException e) {
+                s_verboseFailed = true;
+                errln("Cannot open verbose.txt for logging!");
+                return;
+            }
+
+            // Don't lose the end of the log if the compiler exits early
+            Runtime.getRuntime().addShutdownHook(new Thread(Logger::flushVerbose));
         }
 
-        logVerboseLn("");
+        try {
+            s_verboseSink.write(msg);
+            if (newLine) {
+                s_verboseSink.write(System.lineSeparator());
+            }
+        } catch (final IOException e) {
+            ;
+        }
     }
 
     /**
-     * Print to the standard output stream
-     * 
-     * @param fmt  Format string
-     * @param args Format args
+     * Flush the verbose log file (if it is open)
      */
-    private static void print(final String fmt, final Object... args) {
-        System.out.printf("%s", String.format(fmt, args));
+    private static synchronized void flushVerbose() {
+        if (s_verboseSink == null) {
+            return;
+        }
+
+        try {
+            s_verboseSink.flush();
+        } catch (final IOException e) {
+            ;
+        }
     }
 
     /**
-     * Print (with newline) to the standard output stream
-     * 
-     * @param fmt  Format string
-     * @param args Format args
+     * Write separator line to verbose log
      */
-    private static void println(final String fmt, final Object... args) {
-        System.out.printf("%s%n", String.format(fmt, args));
+    private static void logVerboseSeparator() {
+        if (Config.isVerbose(VerboseLevel.Phase)) {
+            writeVerbose(sc_verboseSeparator, true);
+        }
     }
 
     /**
@@ -7,79 +7,180 @@
 
 package main;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import codegen.CodeFragment;
+import translate.TempManager;
+import tree.TEMP;
+import write.AsmEmitter;
+
 public final class Main {
     public static void main(final String[] args) {
+        // Get system properties
+        Config.initialize();
+
+        // Serve compile requests if specified to do so
+        if (Config.isDaemon()) {
+            daemon();
+            return;
+        }
+
         // Check argument count
         if (args.length < 1) {
             return;
         }
 
-        // Get system properties
-        Config.initialize();
-        Arch.initialize();
-
         // Run test cases if specified to do so
         if (Config.isTest()) {
             test();
             return;
         }
 
-        // Begin logging errors
-        Logger.begin(args[0]);
+        // Compile multiple source files in parallel
+        if (args.length > 1) {
+            compileAll(args);
+            return;
+        }
+
         // Compile source file
-        compile(args[0]);
-        // Display error log
-        Logger.end();
+        compile(args[0], System.out, System.err);
+        Metrics.writeReport(args[0]);
     }
 
     /**
-     * Compile source file
+     * Compile source files in parallel (see Config.getJobs), displaying their
+     * error logs in the same order as the files were given
+     * 
+     * @param fileNames Source file names
+     */
+    private static void compileAll(final String[] fileNames) {
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(Config.getJobs(), fileNames.length));
+
+        // Error log of each file
+        final List<Future<String[]>> logs = new ArrayList<>();
+        for (final String fileName : fileNames) {
+            logs.add(pool.submit(() -> compileLogged(fileName)));
+        }
+
+        for (int i = 0; i < fileNames.length; i++) {
+            try {
+                final String[] log = logs.get(i).get();
+                System.out.print(log[0]);
+                System.out.flush();
+                System.err.print(log[1]);
+                System.err.flush();
+            } catch (final InterruptedException | ExecutionException e) {
+                System.err.printf("%s: Common error: Compilation was interrupted (%s)%n",
+                        fileNames[i], e);
+            }
+        }
+
+        pool.shutdown();
+        Metrics.writeReport(fileNames);
+    }
+
+    /**
+     * Compile source file, keeping its error log instead of displaying it
      * 
      * @param fileName Source file name
+     * @return Error log (standard output, standard error)
      */
-    private static void compile(final String fileName) {
-        /**
-         * Convert source file path to assembly file path.
-         */
-        final String asmFileName = fileName.replace(".java", ".s");
+    private static String[] compileLogged(final String fileName) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        compile(fileName, new PrintStream(out, true), new PrintStream(err, true));
+
+        return new String[] { out.toString(), err.toString() };
+    }
+
+    /**
+     * Compile source file in its own context, and display its error log
+     * 
+     * @param fileName Source file name
+     * @param out      Stream for the error count
+     * @param err      Stream for the errors
+     */
+    private static void compile(final String fileName, final PrintStream out,
+            final PrintStream err) {
+        final CompilationContext ctx = new CompilationContext(fileName);
+
+        ctx.run(() -> {
+            // Begin logging errors
+            Logger.begin();
 
+            // One bad file shouldn't take down the others
+            try {
+                compile(ctx);
+            } catch (final Error e) {
+                Logger.addError("Common error: Internal compiler error (%s)", e);
+            }
+
+            // Display error log
+            Logger.end(out, err);
+        });
+    }
+
+    /**
+     * Compile source file
+     * 
+     * @param ctx Compilation context
+     */
+    private static void compile(final CompilationContext ctx) {
         /**
          * I like to think my error handling is pretty robust, but in the case
          * that some unknown exception occurs during testing, we silently fail
          */
         try {
             // Compiler parse phase
-            if (!parse.Phase.execute(fileName)) {
+            if (!parse.Phase.execute(ctx)) {
                 return;
             }
 
             // Compiler check phase
-            if (!check.Phase.execute()) {
+            if (!check.Phase.execute(ctx)) {
+                return;
+            }
+
+            // Remaining phases, one method at a time
+            if (Config.isStream()) {
+                compileStreaming(ctx);
                 return;
             }
 
             // Compiler translate phase
-            if (!translate.Phase.execute()) {
+            if (!translate.Phase.execute(ctx)) {
                 return;
             }
 
             // Compiler codegen phase
-            if (!codegen.Phase.execute()) {
+            if (!codegen.Phase.execute(ctx)) {
                 return;
             }
 
             // Compiler optimization phase
-            if (!optimize.Phase.execute()) {
+            if (!optimize.Phase.execute(ctx)) {
                 return;
             }
 
             // Compiler register allocation phase
-            if (!regalloc.Phase.execute()) {
+            if (!regalloc.Phase.execute(ctx)) {
                 return;
             }
 
             // Compiler write phase
-            if (!write.Phase.execute(asmFileName)) {
+            if (!write.Phase.execute(ctx)) {
                 return;
             }
         } catch (final Exception e) {
@@ -87,6 +188,95 @@ public final class Main {
         }
     }
 
+    /**
+     * Compile checked program, streaming each method through the rest of the
+     * phases (translate -> canonicalize -> select -> optimize -> regalloc ->
+     * write) as soon as it is translated.
+     * 
+     * Nothing is kept after a method has been written, so the memory used by
+     * the back end is bounded by the largest method instead of the program.
+     * 
+     * @param ctx Compilation context
+     */
+    private static void compileStreaming(final CompilationContext ctx) {
+        final AsmEmitter emitter = write.Phase.open(ctx);
+
+        if (emitter == null) {
+            return;
+        }
+
+        // Whether the assembly file is complete
+        boolean success = false;
+
+        try {
+            ctx.setIRFragmentSink(frag -> {
+                // Don't bother with the rest of the program after an error
+                if (Logger.isError()) {
+                    return;
+                }
+
+                translate.Phase.inline(ctx, frag);
+                translate.Phase.linearize(ctx, frag);
+                translate.Phase.propagate(ctx, frag);
+                Logger.logVerboseLn(frag::toString);
+
+                final CodeFragment code = codegen.Phase.selectFragment(frag);
+                Logger.logVerboseLn(code::toString);
+
+                optimize.Phase.optimizeFragment(code);
+                regalloc.Phase.allocateFragment(code);
+
+                if (!Logger.isError()) {
+                    write.Phase.writeFragment(ctx, emitter, code);
+                }
+            });
+
+            success = translate.Phase.execute(ctx) && !Logger.isError();
+        } finally {
+            ctx.setIRFragmentSink(null);
+            write.Phase.close(ctx, emitter, success);
+        }
+    }
+
+    /**
+     * Serve compile requests until standard input is closed.
+     * 
+     * Each line of input is the path of a source file to compile (blank lines
+     * are ignored, and "quit" stops the daemon). The error log of each file is
+     * displayed like usual, followed by a line containing only "done", so the
+     * client knows when the request has finished.
+     * 
+     * Keeping the compiler resident means the JVM only has to start up (and
+     * the JIT only has to warm up) once for any number of files.
+     */
+    private static void daemon() {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String fileName = line.trim();
+
+                if (fileName.isEmpty()) {
+                    continue;
+                }
+
+                if (fileName.equals("quit")) {
+                    break;
+                }
+
+                compile(fileName, System.out, System.err);
+                Metrics.writeReport(fileName);
+
+                System.err.flush();
+                System.out.println("done");
+                System.out.flush();
+            }
+        } catch (final IOException e) {
+            ;
+        }
+    }
+
     /**
      * Test the compiler against Appel's testcases (and my own)
      */
@@ -106,12 +296,34 @@ public final class Main {
                 "tests/IROptimizerTest.java",
                 "tests/ArrayTest.java",
                 "tests/DefUseTest.java",
+                "tests/SpillTest.java",
+                "tests/DispatchTest.java",
+                "tests/ConstPropTest.java",
         };
 
-        for (final String test : tests) {
-            Logger.begin(test);
-            compile(test);
-            Logger.end();
+        compileAll(tests);
+        checkTempNames();
+    }
+
+    /**
+     * Check that the temps of two local variables never share a name, even
+     * once the temp numbers run into the variable names ("v1" as temp 0 and
+     * "v" as temp 10000 would both be t$v10000 without a separator)
+     */
+    private static void checkTempNames() {
+        final TempManager tempMgr = new TempManager();
+        final TEMP v1 = tempMgr.variable("v1");
+
+        while (tempMgr.size() < 10000) {
+            tempMgr.create();
+        }
+
+        final TEMP v = tempMgr.variable("v");
+        final boolean ok = !v.temp.equals(v1.temp) && tempMgr.indexOf(v.temp) == 10000;
+
+        System.out.printf("check=TempManager.variable, errors=%d%n", ok ? 0 : 1);
+        if (!ok) {
+            System.err.printf("TempManager.variable: Temps %s and %s share a name%n", v1.temp, v.temp);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,385 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compile cost metrics of one compilation (-Dmetrics=out.json).
+ * 
+ * Every phase is measured from Logger.registerPhase until the next phase
+ * begins, and the work done on each fragment (method) is measured separately:
+ * wall time, bytes allocated, and counts such as IR nodes, instructions,
+ * temps, optimizer work and registers used.
+ * 
+ * Allocations are counted per thread (ThreadMXBean), so a phase's bytes are
+ * the compiling thread's, plus those of fragments processed on other threads
+ * (see CompilationContext.parallelMap) while the phase was running.
+ * 
+ * When the run is over, the metrics of all compilations are written to the
+ * metrics file as JSON (see writeReport).
+ */
+public final class Metrics {
+    /**
+     * Measurement of a phase, or of the work on one fragment in a phase
+     */
+    private static final class Record {
+        // Phase name
+        private final String m_phase;
+        // Fragment name (null for the whole phase)
+        private String m_fragment;
+        // Thread doing the work
+        private final long m_threadId;
+        // Time when the work began
+        private final long m_startTime;
+        // Bytes allocated by the thread before the work began
+        private final long m_startBytes;
+
+        // Wall time, in nanoseconds
+        private long m_wallNanos = 0;
+        // Bytes allocated (-1 if unknown)
+        private long m_allocatedBytes = -1;
+        // Counts (IR nodes, instructions, etc.)
+        private final Map<String, Long> m_counts = new LinkedHashMap<>();
+
+        /**
+         * Constructor (begins the measurement)
+         * 
+         * @param phase    Phase name
+         * @param fragment Fragment name (null for the whole phase, or if not known yet)
+         */
+        private Record(final String phase, final String fragment) {
+            m_phase = phase;
+            m_fragment = fragment;
+            m_threadId = Thread.currentThread().getId();
+            m_startBytes = getAllocatedBytes();
+            m_startTime = System.nanoTime();
+        }
+
+        /**
+         * Add to a count
+         * 
+         * @param name  Count name
+         * @param value Amount to add
+         */
+        private void count(final String name, final long value) {
+            m_counts.merge(name, value, Long::sum);
+        }
+
+        /**
+         * Finish the measurement
+         */
+        private void finish() {
+            m_wallNanos = System.nanoTime() - m_startTime;
+
+            final long bytes = getAllocatedBytes();
+            if (bytes >= 0 && m_startBytes >= 0) {
+                m_allocatedBytes = bytes - m_startBytes;
+            }
+        }
+
+        /**
+         * Write record as a JSON object
+         * 
+         * @param sb     Output
+         * @param indent Indentation
+         */
+        private void toJson(final StringBuilder sb, final String indent) {
+            sb.append(indent).append("{ \"name\": ").append(quote(m_phase));
+            sb.append(", \"wallNanos\": ").append(m_wallNanos);
+            sb.append(", \"allocatedBytes\": ").append(m_allocatedBytes);
+
+            for (final Map.Entry<String, Long> count : m_counts.entrySet()) {
+                sb.append(", ").append(quote(count.getKey())).append(": ").append(count.getValue());
+            }
+
+            sb.append(" }");
+        }
+    }
+
+    // Thread management interface (for allocated bytes)
+    private static final ThreadMXBean sc_threads = ManagementFactory.getThreadMXBean();
+    // Fragment work being measured on each thread
+    private static final ThreadLocal<Record> s_current = new ThreadLocal<>();
+    // Metrics of finished compilations, waiting to be written
+    private static final List<Metrics> s_report = Collections.synchronizedList(new ArrayList<>());
+
+    // Source file path
+    private final String m_filePath;
+    // Number of errors found
+    private int m_errors = 0;
+    // Finished phases
+    private final List<Record> m_phases = new ArrayList<>();
+    // Finished fragment work (fragments may be processed in parallel)
+    private final List<Record> m_fragments = Collections.synchronizedList(new ArrayList<>());
+    // Phase being measured
+    private Record m_phase = null;
+    // Number of fragment records when the phase began
+    private int m_phaseFragments = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param filePath Source file path
+     */
+    public Metrics(final String filePath) {
+        m_filePath = filePath;
+    }
+
+    /**
+     * Begin measuring a new phase of the current compilation
+     * (the previous phase is finished)
+     * 
+     * @param name Phase name
+     */
+    public static void beginPhase(final String name) {
+        final Metrics metrics = CompilationContext.current().getMetrics();
+
+        if (metrics != null) {
+            metrics.finishPhase();
+            metrics.m_phase = new Record(name, null);
+            metrics.m_phaseFragments = metrics.m_fragments.size();
+        }
+    }
+
+    /**
+     * Finish measuring the current compilation
+     * 
+     * @param errors Number of errors found
+     */
+    public static void finish(final int errors) {
+        final Metrics metrics = CompilationContext.current().getMetrics();
+
+        if (metrics != null) {
+            metrics.finishPhase();
+            metrics.m_errors = errors;
+            s_report.add(metrics);
+        }
+    }
+
+    /**
+     * Begin measuring work on a fragment (on this thread).
+     * Counts are added with count, until the measurement is finished with end.
+     * 
+     * @param phase Phase name
+     */
+    public static void begin(final String phase) {
+        if (Config.isMetrics()) {
+            s_current.set(new Record(phase, null));
+        }
+    }
+
+    /**
+     * Add to a count of the fragment work being measured on this thread
+     * (does nothing if there is none)
+     * 
+     * @param name  Count name
+     * @param value Amount to add
+     */
+    public static void count(final String name, final long value) {
+        final Record record = s_current.get();
+
+        if (record != null) {
+            record.count(name, value);
+        }
+    }
+
+    /**
+     * Finish measuring the fragment work on this thread
+     * (does nothing if there is none)
+     * 
+     * @param fragment Fragment name
+     */
+    public static void end(final String fragment) {
+        final Record record = s_current.get();
+
+        if (record == null) {
+            return;
+        }
+
+        s_current.remove();
+        record.finish();
+        record.m_fragment = fragment;
+
+        final Metrics metrics = CompilationContext.current().getMetrics();
+        if (metrics != null) {
+            metrics.m_fragments.add(record);
+        }
+    }
+
+    /**
+     * Finish measuring the current phase
+     */
+    private void finishPhase() {
+        if (m_phase == null) {
+            return;
+        }
+
+        m_phase.finish();
+
+        // Add allocations of fragments processed on other threads
+        synchronized (m_fragments) {
+            for (final Record frag : m_fragments.subList(m_phaseFragments, m_fragments.size())) {
+                if (frag.m_threadId != m_phase.m_threadId && frag.m_allocatedBytes > 0
+                        && m_phase.m_allocatedBytes >= 0) {
+                    m_phase.m_allocatedBytes += frag.m_allocatedBytes;
+                }
+            }
+        }
+
+        m_phases.add(m_phase);
+        m_phase = null;
+    }
+
+    /**
+     * Write the metrics of all compilations finished so far to the metrics
+     * file, and forget them
+     * 
+     * @param fileNames Source files of the compilations (the order to write them in)
+     */
+    public static void writeReport(final String... fileNames) {
+        if (!Config.isMetrics()) {
+            return;
+        }
+
+        final List<Metrics> report;
+        synchronized (s_report) {
+            report = new ArrayList<>(s_report);
+            s_report.clear();
+        }
+
+        // Same order as the files were given (not the order they finished in)
+        final List<String> order = Arrays.asList(fileNames);
+        report.sort((a, b) -> Integer.compare(order.indexOf(a.m_filePath), order.indexOf(b.m_filePath)));
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"compilations\": [");
+
+        for (int i = 0; i < report.size(); i++) {
+            sb.append(i > 0 ? ",\n" : "\n");
+            report.get(i).toJson(sb);
+        }
+
+        sb.append("\n  ]\n");
+        sb.append("}\n");
+
+        try (final Writer writer = new FileWriter(Config.getMetricsPath())) {
+            writer.write(sb.toString());
+        } catch (final IOException e) {
+            System.err.printf("Common error: Unable to write metrics file: %s%n", Config.getMetricsPath());
+        }
+    }
+
+    /**
+     * Write metrics of this compilation as a JSON object
+     * 
+     * @param sb Output
+     */
+    private void toJson(final StringBuilder sb) {
+        // Totals of all phases
+        long wallNanos = 0;
+        long allocatedBytes = 0;
+        for (final Record phase : m_phases) {
+            wallNanos += phase.m_wallNanos;
+            allocatedBytes = phase.m_allocatedBytes >= 0 && allocatedBytes >= 0
+                    ? allocatedBytes + phase.m_allocatedBytes
+                    : -1;
+        }
+
+        sb.append("    {\n");
+        sb.append("      \"file\": ").append(quote(m_filePath)).append(",\n");
+        sb.append("      \"errors\": ").append(m_errors).append(",\n");
+        sb.append("      \"wallNanos\": ").append(wallNanos).append(",\n");
+        sb.append("      \"allocatedBytes\": ").append(allocatedBytes).append(",\n");
+
+        sb.append("      \"phases\": [");
+        for (int i = 0; i < m_phases.size(); i++) {
+            sb.append(i > 0 ? ",\n" : "\n");
+            m_phases.get(i).toJson(sb, "        ");
+        }
+        sb.append("\n      ],\n");
+
+        // Group fragment work by fragment (in the order they were translated)
+        final Map<String, List<Record>> fragments = new LinkedHashMap<>();
+        synchronized (m_fragments) {
+            for (final Record record : m_fragments) {
+                fragments.computeIfAbsent(record.m_fragment, k -> new ArrayList<>()).add(record);
+            }
+        }
+
+        sb.append("      \"fragments\": [");
+        int i = 0;
+        for (final Map.Entry<String, List<Record>> frag : fragments.entrySet()) {
+            sb.append(i++ > 0 ? ",\n" : "\n");
+            sb.append("        {\n");
+            sb.append("          \"name\": ").append(quote(frag.getKey())).append(",\n");
+            sb.append("          \"phases\": [");
+
+            for (int j = 0; j < frag.getValue().size(); j++) {
+                sb.append(j > 0 ? ",\n" : "\n");
+                frag.getValue().get(j).toJson(sb, "            ");
+            }
+
+            sb.append("\n          ]\n");
+            sb.append("        }");
+        }
+        sb.append("\n      ]\n");
+
+        sb.append("    }");
+    }
+
+    /**
+     * Get number of bytes allocated by this thread so far
+     * 
+     * @return Allocated bytes (-1 if not supported by the JVM)
+     */
+    private static long getAllocatedBytes() {
+        if (sc_threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) sc_threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Quote string for JSON
+     */
+    private static String quote(final String s) {
+        if (s == null) {
+            return "null";
+        }
+
+        final StringBuilder sb = new StringBuilder("\"");
+
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+}
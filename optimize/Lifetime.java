@@ -11,17 +11,23 @@ import assem.*;
 import tree.*;
 import codegen.CodeFragment;
 import main.Util;
+import translate.TempManager;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Representation of a temp's lifetime (in its parent code fragment)
  * 
- * This notion of a "lifetime" is naive, as it doesn't account for things like
- * basic blocks.
- * 
- * A temp's lifetime simply has a start and end point, regardless of how the
- * blocks are ordered.
+ * The start/end of a lifetime are the first/last instructions referencing the
+ * temp. Because the code has branches and loops, the temp can be live outside
+ * of this range (for example, a temp used at the top of a loop is live until
+ * the loop jumps back). The live range found by liveness analysis is kept
+ * alongside it (see getLiveStart/getLiveEnd).
  */
 public final class Lifetime {
     // Lifetime-starting instruction
@@ -34,6 +40,17 @@ public final class Lifetime {
     // Index of lifetime-ending instruction
     public int endIndex = -1;
 
+    // Live range from liveness analysis (outside of the references)
+    private int m_liveStart = -1;
+    private int m_liveEnd = -1;
+    // Last instruction after which the temp is still live (leaving its block)
+    private int m_liveOutIndex = -1;
+
+    // Sorted indices of all instructions referencing the temp (with multiplicity)
+    private int[] m_refs = new int[2];
+    // Number of references in the above array
+    private int m_numRefs = 0;
+
     /**
      * Process temp reference
      * 
@@ -41,6 +58,9 @@ public final class Lifetime {
      * @param index Index of instruction into its fragment
      */
     public void ref(final Instruction insn, final int index) {
+        // References are processed in order, so the list stays sorted
+        insertRef(index);
+
         if (startInsn == null) {
             // Instruction begins lifetime
             startInsn = insn;
@@ -52,6 +72,52 @@ public final class Lifetime {
         }
     }
 
+    /**
+     * Get number of references to the temp (with multiplicity)
+     */
+    public int getNumRefs() {
+        return m_numRefs;
+    }
+
+    /**
+     * Get index of the first instruction where the temp is live
+     */
+    public int getLiveStart() {
+        if (m_liveStart == -1) {
+            return startIndex;
+        }
+
+        return startIndex == -1 ? m_liveStart : Math.min(startIndex, m_liveStart);
+    }
+
+    /**
+     * Get index of the last instruction where the temp is live
+     */
+    public int getLiveEnd() {
+        return Math.max(endIndex, m_liveEnd);
+    }
+
+    /**
+     * Check whether the temp is dead after an instruction.
+     * This is only true at the last reference, and only if the temp does not
+     * stay live beyond it (i.e. around a loop).
+     * 
+     * @param index Instruction index
+     */
+    public boolean diesAt(final int index) {
+        return endIndex == index && m_liveOutIndex < index;
+    }
+
+    /**
+     * Extend live range to include an instruction
+     * 
+     * @param index Instruction index
+     */
+    private void extendLive(final int index) {
+        m_liveStart = m_liveStart == -1 ? index : Math.min(m_liveStart, index);
+        m_liveEnd = Math.max(m_liveEnd, index);
+    }
+
     /**
      * Check whether the lifetime is valid
      */
@@ -68,33 +134,179 @@ public final class Lifetime {
     }
 
     /**
-     * Determine lifetimes of all temps in a code fragment
+     * Record a reference to the temp, keeping the reference list sorted
+     * 
+     * @param index Index of referencing instruction
+     */
+    private void insertRef(final int index) {
+        if (m_numRefs == m_refs.length) {
+            m_refs = Arrays.copyOf(m_refs, m_refs.length * 2);
+        }
+
+        // Most references are appended (analysis runs in code order)
+        int pos = m_numRefs;
+        while (pos > 0 && m_refs[pos - 1] > index) {
+            pos--;
+        }
+
+        System.arraycopy(m_refs, pos, m_refs, pos + 1, m_numRefs - pos);
+        m_refs[pos] = index;
+        m_numRefs++;
+    }
+
+    /**
+     * Forget all references to the temp made by one instruction
+     * 
+     * @param index Index of referencing instruction
+     */
+    private void removeRefs(final int index) {
+        int j = 0;
+        for (int i = 0; i < m_numRefs; i++) {
+            if (m_refs[i] != index) {
+                m_refs[j++] = m_refs[i];
+            }
+        }
+
+        m_numRefs = j;
+    }
+
+    /**
+     * Recompute lifetime bounds from the reference list.
+     * Like ref(), a lifetime only has an end once it has two references.
+     * 
+     * @param code Code containing the referencing instructions
+     */
+    private void fixBounds(final List<Instruction> code) {
+        startInsn = null;
+        startIndex = -1;
+        endInsn = null;
+        endIndex = -1;
+
+        if (m_numRefs > 0) {
+            startIndex = m_refs[0];
+            startInsn = code.get(startIndex);
+        }
+
+        if (m_numRefs > 1) {
+            endIndex = m_refs[m_numRefs - 1];
+            endInsn = code.get(endIndex);
+        }
+    }
+
+    /**
+     * Update lifetimes after an instruction in a code fragment is replaced.
+     * 
+     * Only temps referenced by the old/new instruction are touched, so this is
+     * much cheaper than re-running analyze() over the whole fragment.
+     * 
+     * Instruction indices are expected to stay stable, so deleted instructions
+     * should be left as null in the code until the caller is done optimizing.
+     * The live ranges from the last analyze() are kept as they were, which is
+     * conservative until the next analysis.
+     * 
+     * @param frag    Code fragment (already containing the new instruction)
+     * @param index   Index of replaced instruction
+     * @param oldInsn Previous instruction
+     * @param newInsn New instruction (null if deleted)
+     * @return Lifetimes which were affected
+     */
+    public static Set<Lifetime> update(final CodeFragment frag, final int index,
+            final Instruction oldInsn, final Instruction newInsn) {
+        // Lifetimes which need their bounds fixed
+        final HashSet<Lifetime> dirty = new HashSet<>();
+
+        // Remove references from old instruction
+        if (oldInsn != null) {
+            for (final NameOfTemp t : Util.concatList(oldInsn.def(), oldInsn.use())) {
+                final Lifetime life = frag.lifetimes.get(t);
+
+                if (life != null && dirty.add(life)) {
+                    life.removeRefs(index);
+                }
+            }
+        }
+
+        // Add references from new instruction
+        if (newInsn != null) {
+            for (final NameOfTemp t : Util.concatList(newInsn.def(), newInsn.use())) {
+                final Lifetime life = frag.lifetimes.get(t);
+
+                if (life != null) {
+                    // Make sure the old references are gone first
+                    if (dirty.add(life)) {
+                        life.removeRefs(index);
+                    }
+
+                    life.insertRef(index);
+                }
+            }
+        }
+
+        for (final Lifetime life : dirty) {
+            life.fixBounds(frag.code);
+        }
+
+        return dirty;
+    }
+
+    /**
+     * Determine lifetimes of all temps in a code fragment.
+     * References are found in code order, and then liveness analysis finds
+     * where the temps stay live across basic blocks.
      * 
      * @return Map from temp name to temp lifetime
      */
     public static HashMap<NameOfTemp, Lifetime> analyze(final CodeFragment frag) {
-        // Initialize map
-        HashMap<NameOfTemp, Lifetime> map = new HashMap<>();
-        for (final TEMP t : frag.tempMgr.children()) {
-            map.put(t.temp, new Lifetime());
+        final TempManager tempMgr = frag.tempMgr;
+
+        // Lifetimes by temp index
+        final Lifetime[] lives = new Lifetime[tempMgr.size()];
+        for (int i = 0; i < lives.length; i++) {
+            lives[i] = new Lifetime();
         }
 
         // Compute temp lifetimes
         for (int i = 0; i < frag.code.size(); i++) {
             final Instruction insn = frag.code.get(i);
 
+            // Deleted instruction (see update())
+            if (insn == null) {
+                continue;
+            }
+
             // Temp references in instruction
             for (final NameOfTemp t : Util.concatList(insn.def(), insn.use())) {
-                final Lifetime life = map.get(t);
+                final int index = tempMgr.indexOf(t);
 
-                // It is okay if this is null.
+                // It is okay if this is not found.
                 // Temps such as "%fp"/"%o0" are not meant to be mapped
-                if (life != null) {
-                    life.ref(insn, i);
+                if (index != -1) {
+                    lives[index].ref(insn, i);
                 }
             }
         }
 
+        // Extend lifetimes to wherever the temps are live across blocks
+        final Liveness liveness = new Liveness(frag.code, tempMgr);
+        for (int b = 0; b < liveness.getNumBlocks(); b++) {
+            final BitSet in = liveness.getLiveIn(b);
+            for (int t = in.nextSetBit(0); t >= 0; t = in.nextSetBit(t + 1)) {
+                lives[t].extendLive(liveness.getBlockStart(b));
+            }
+
+            final BitSet out = liveness.getLiveOut(b);
+            for (int t = out.nextSetBit(0); t >= 0; t = out.nextSetBit(t + 1)) {
+                lives[t].extendLive(liveness.getBlockEnd(b));
+                lives[t].m_liveOutIndex = Math.max(lives[t].m_liveOutIndex, liveness.getBlockEnd(b));
+            }
+        }
+
+        // Build map
+        final HashMap<NameOfTemp, Lifetime> map = new HashMap<>();
+        for (int i = 0; i < lives.length; i++) {
+            map.put(tempMgr.getTemp(i), lives[i]);
+        }
+
         return map;
     }
 }
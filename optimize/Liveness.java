@@ -0,0 +1,297 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package optimize;
+
+import assem.*;
+import tree.*;
+import main.Arch;
+import translate.TempManager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Liveness analysis of temps in a list of instructions.
+ * 
+ * The instructions are split into basic blocks, and the live-in/live-out sets
+ * of every block are found by iterating the dataflow equations until nothing
+ * changes:
+ * 
+ * out[b] = union of in[s] for all successors s
+ * in[b] = use[b] + (out[b] - def[b])
+ * 
+ * Only temps in the given universe are tracked (other operands, such as
+ * reserved registers, are ignored).
+ */
+public final class Liveness {
+    // Index of each tracked temp (-1 if not tracked)
+    private final ToIntFunction<NameOfTemp> m_indexOf;
+    // Tracked temps (by index)
+    private final IntFunction<NameOfTemp> m_tempOf;
+
+    // Index of the first instruction of each block (plus the end of the code)
+    private final List<Integer> m_blockStarts = new ArrayList<>();
+    // Successor blocks of each block
+    private final List<List<Integer>> m_succs = new ArrayList<>();
+
+    // Temps live at the start of each block
+    private BitSet[] m_liveIn;
+    // Temps live at the end of each block
+    private BitSet[] m_liveOut;
+
+    /**
+     * Compute liveness of temps in a list of instructions.
+     * Deleted (null) instructions are treated as no-ops.
+     * 
+     * @param code     Instructions
+     * @param universe Temps to track
+     */
+    public Liveness(final List<Instruction> code, final Collection<NameOfTemp> universe) {
+        final Map<NameOfTemp, Integer> indices = new HashMap<>();
+        final List<NameOfTemp> temps = new ArrayList<>(universe);
+
+        for (final NameOfTemp t : temps) {
+            indices.put(t, indices.size());
+        }
+
+        m_indexOf = t -> indices.getOrDefault(t, -1);
+        m_tempOf = temps::get;
+
+        buildBlocks(code);
+        solve(code);
+    }
+
+    /**
+     * Compute liveness of all temps owned by a temp manager.
+     * Bits of the live sets are the temps' indices in the manager.
+     * 
+     * @param code    Instructions
+     * @param tempMgr Manager of temps to track
+     */
+    public Liveness(final List<Instruction> code, final TempManager tempMgr) {
+        m_indexOf = tempMgr::indexOf;
+        m_tempOf = tempMgr::getTemp;
+
+        buildBlocks(code);
+        solve(code);
+    }
+
+    /**
+     * Get number of basic blocks
+     */
+    public int getNumBlocks() {
+        // Last start is the sentinel
+        return m_blockStarts.size() - 1;
+    }
+
+    /**
+     * Get index of the first instruction in a block
+     */
+    public int getBlockStart(final int block) {
+        return m_blockStarts.get(block);
+    }
+
+    /**
+     * Get index of the last instruction in a block
+     */
+    public int getBlockEnd(final int block) {
+        return m_blockStarts.get(block + 1) - 1;
+    }
+
+    /**
+     * Access temps live at the start of a block
+     */
+    public Set<NameOfTemp> liveIn(final int block) {
+        return toTemps(m_liveIn[block]);
+    }
+
+    /**
+     * Access temps live at the end of a block
+     */
+    public Set<NameOfTemp> liveOut(final int block) {
+        return toTemps(m_liveOut[block]);
+    }
+
+    /**
+     * Access indices of temps live at the start of a block (do not modify)
+     */
+    public BitSet getLiveIn(final int block) {
+        return m_liveIn[block];
+    }
+
+    /**
+     * Access indices of temps live at the end of a block (do not modify)
+     */
+    public BitSet getLiveOut(final int block) {
+        return m_liveOut[block];
+    }
+
+    /**
+     * Check whether a temp is tracked by this analysis
+     */
+    public boolean isTracked(final NameOfTemp t) {
+        return m_indexOf.applyAsInt(t) != -1;
+    }
+
+    /**
+     * Split instructions into basic blocks, and connect them
+     * 
+     * @param code Instructions
+     */
+    private void buildBlocks(final List<Instruction> code) {
+        // Block which begins with each label
+        final Map<NameOfLabel, Integer> labels = new HashMap<>();
+
+        // Blocks begin at labels, and after any jump
+        for (int i = 0; i < code.size(); i++) {
+            final Instruction insn = code.get(i);
+            final Instruction prev = i > 0 ? code.get(i - 1) : null;
+
+            if (i == 0 || insn instanceof LabelInstruction || endsBlock(prev)) {
+                m_blockStarts.add(i);
+            }
+
+            if (insn instanceof LabelInstruction) {
+                labels.put(((LabelInstruction) insn).label, m_blockStarts.size() - 1);
+            }
+        }
+
+        // Sentinel (end of the last block)
+        m_blockStarts.add(code.size());
+
+        for (int b = 0; b < getNumBlocks(); b++) {
+            final List<Integer> succs = new ArrayList<>();
+            final Instruction last = code.get(getBlockEnd(b));
+
+            // Execution continues to the next block
+            if (b + 1 < getNumBlocks() && (last == null || Arch.get().insnFallsThrough(last))) {
+                succs.add(b + 1);
+            }
+
+            // Execution branches to a label in this code
+            if (last != null) {
+                for (final NameOfLabel target : Arch.get().getInsnTargets(last)) {
+                    final Integer dst = labels.get(target);
+
+                    if (dst != null && !succs.contains(dst)) {
+                        succs.add(dst);
+                    }
+                }
+            }
+
+            m_succs.add(succs);
+        }
+    }
+
+    /**
+     * Check whether an instruction is the last one in its block
+     */
+    private static boolean endsBlock(final Instruction insn) {
+        if (insn == null) {
+            return false;
+        }
+
+        return !Arch.get().insnFallsThrough(insn) || !Arch.get().getInsnTargets(insn).isEmpty();
+    }
+
+    /**
+     * Solve the dataflow equations for all blocks
+     * 
+     * @param code Instructions
+     */
+    private void solve(final List<Instruction> code) {
+        final int numBlocks = getNumBlocks();
+
+        // Temps read before being written in each block
+        final BitSet[] uses = new BitSet[numBlocks];
+        // Temps written in each block
+        final BitSet[] defs = new BitSet[numBlocks];
+
+        m_liveIn = new BitSet[numBlocks];
+        m_liveOut = new BitSet[numBlocks];
+
+        for (int b = 0; b < numBlocks; b++) {
+            uses[b] = new BitSet();
+            defs[b] = new BitSet();
+
+            for (int i = getBlockStart(b); i <= getBlockEnd(b); i++) {
+                final Instruction insn = code.get(i);
+
+                if (insn == null) {
+                    continue;
+                }
+
+                for (final NameOfTemp t : Arch.get().getInsnReads(insn)) {
+                    final int idx = m_indexOf.applyAsInt(t);
+
+                    if (idx != -1 && !defs[b].get(idx)) {
+                        uses[b].set(idx);
+                    }
+                }
+
+                for (final NameOfTemp t : Arch.get().getInsnWrites(insn)) {
+                    final int idx = m_indexOf.applyAsInt(t);
+
+                    if (idx != -1) {
+                        defs[b].set(idx);
+                    }
+                }
+            }
+
+            m_liveIn[b] = (BitSet) uses[b].clone();
+            m_liveOut[b] = new BitSet();
+        }
+
+        // Iterate until nothing changes.
+        // Visiting blocks backwards makes this converge much faster.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int b = numBlocks - 1; b >= 0; b--) {
+                final BitSet out = new BitSet();
+                for (final int s : m_succs.get(b)) {
+                    out.or(m_liveIn[s]);
+                }
+
+                if (out.equals(m_liveOut[b])) {
+                    continue;
+                }
+
+                final BitSet in = (BitSet) out.clone();
+                in.andNot(defs[b]);
+                in.or(uses[b]);
+
+                m_liveOut[b] = out;
+                m_liveIn[b] = in;
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Convert bitset to set of temps
+     */
+    private Set<NameOfTemp> toTemps(final BitSet bits) {
+        final Set<NameOfTemp> temps = new HashSet<>();
+
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            temps.add(m_tempOf.apply(i));
+        }
+
+        return temps;
+    }
+}
@@ -7,8 +7,10 @@
 
 package optimize;
 
-import main.Logger;
 import main.Arch;
+import main.Logger;
+import main.Metrics;
+import main.CompilationContext;
 import codegen.CodeFragment;
 
 import java.util.HashMap;
@@ -31,23 +33,37 @@ public final class Phase {
      * Perform optimization phase of compiler.
      * Remove unnecessary instructions from the final assembly code.
      * 
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute() {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
         initialize();
 
-        // Print assembly code before register allocation
-        for (final CodeFragment frag : codegen.Phase.getCodeFragments()) {
-            Logger.logVerboseLn("==========Begin optimization for fragment %s==========",
-                    frag.getName());
+        // Fragments are independent, so they are optimized in parallel
+        ctx.parallelForEach(ctx.getCodeFragments(), Phase::optimizeFragment);
 
-            // Get temp lifetimes
-            final HashMap<NameOfTemp, Lifetime> lifetimes = Lifetime.analyze(frag);
-            // Link this to code fragment for use later (see optimization phase)
-            frag.lifetimes = lifetimes;
+        return true;
+    }
 
-            // Dump lifetime info
+    /**
+     * Optimize a code fragment
+     * 
+     * @param frag Code fragment
+     */
+    public static void optimizeFragment(final CodeFragment frag) {
+        Logger.logVerboseLn("==========Begin optimization for fragment %s==========",
+                frag.getName());
+        Metrics.begin("Optimize");
+
+        // Get temp lifetimes
+        final HashMap<NameOfTemp, Lifetime> lifetimes = Lifetime.analyze(frag);
+        // Link this to code fragment for use later (see optimization phase)
+        frag.lifetimes = lifetimes;
+
+        // Dump lifetime info (trace output only, formatting every
+        // instruction is too expensive to do for nothing)
+        if (Logger.isTracing()) {
             for (Entry<NameOfTemp, Lifetime> pair : lifetimes.entrySet()) {
                 final String name = pair.getKey().toString();
                 final Lifetime life = pair.getValue();
@@ -65,15 +81,14 @@ public final class Phase {
 
                 Logger.logVerboseLn("");
             }
+        }
 
-            // Keep performing optimization passes until nothing can be changed
-            while (Arch.get().optimize(frag)) {
-                ;
-            }
+        // Optimizer keeps going until nothing can be changed
+        Arch.get().optimize(frag);
 
-            Logger.logVerboseLn("");
-        }
+        Metrics.count("instructions", frag.code.size());
+        Metrics.end(frag.getName());
 
-        return true;
+        Logger.logVerboseLn("");
     }
 }
\ No newline at end of file
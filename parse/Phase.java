@@ -9,7 +9,9 @@ package parse;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
+import main.CompilationContext;
 import main.Logger;
 import parse.javacc.MiniJavaParser;
 import parse.javacc.ParseException;
@@ -20,47 +22,50 @@ import syntax.Program;
  * Wrapper for "parse phase" of the compiler
  */
 public final class Phase {
-    // Root program AST node
-    private static Program s_astRoot;
-
     /**
      * Clear phase state, in case the phase is being ran again
      */
-    private static void initialize() {
+    private static void initialize(final CompilationContext ctx) {
         Logger.registerPhase("Parse");
-        s_astRoot = null;
+        ctx.setAstRoot(null);
     }
 
     /**
      * Perform parse phase of the compiler.
      * Scan and parse the source code, and produce an AST tree.
      * 
-     * @param fileName Source file name
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute(final String fileName) {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
-        initialize();
-
-        // Open file
-        final FileInputStream file = openFile(fileName);
-
-        if (file == null) {
-            Logger.logVerboseLn("Failed to open file %s", fileName);
-            return false;
+        initialize(ctx);
+
+        // Source file name
+        final String fileName = ctx.getFilePath();
+
+        // Open file (closed after parsing, so the daemon doesn't leak it)
+        try (final FileInputStream file = openFile(fileName)) {
+            if (file == null) {
+                Logger.logVerboseLn("Failed to open file %s", fileName);
+                return false;
+            }
+
+            /**
+             * Parse program to AST
+             */
+
+            // Open parser
+            final MiniJavaParser parser = new MiniJavaParser(file);
+            // Parse file into AST
+            ctx.setAstRoot(parseProgram(parser));
+        } catch (final IOException e) {
+            // Program has already been parsed, only closing the file failed
+            ;
         }
 
-        /**
-         * Parse program to AST
-         */
-
-        // Open parser
-        final MiniJavaParser parser = new MiniJavaParser(file);
-        // Parse file into AST
-        s_astRoot = parseProgram(parser);
-
         // Lexer/parser error, don't proceed further in the compilation
-        if (s_astRoot == null || Logger.isError()) {
+        if (ctx.getAstRoot() == null || Logger.isError()) {
             Logger.logVerboseLn("Failed to convert program to AST");
             return false;
         }
@@ -69,10 +74,10 @@ public final class Phase {
     }
 
     /**
-     * Get root program AST node
+     * Get root program AST node of the current compilation
      */
     public static Program getAstRoot() {
-        return s_astRoot;
+        return CompilationContext.current().getAstRoot();
     }
 
     /**
@@ -7,36 +7,170 @@
 
 package regalloc;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 import codegen.CodeFragment;
+import main.Arch;
 import main.Logger;
+import main.Metrics;
+import main.Util;
 import optimize.Lifetime;
 import tree.*;
 import assem.*;
 
 /**
- * Register allocator
+ * Register allocator (linear scan)
  */
 public final class Allocator {
-    // Register pool
-    private static Pool s_regPool = null;
+    /**
+     * Live interval of a temp (range of instructions needing its register)
+     */
+    static final class Interval {
+        // Temp which needs a register
+        final NameOfTemp temp;
+        // Index of the temp (see TempManager)
+        final int index;
+        // Index of instruction where the register is first needed
+        final int start;
+        // Index of instruction where the register is free again
+        final int end;
+        // Register assigned to the temp
+        String reg = null;
+
+        public Interval(final NameOfTemp temp, final int index, final int start, final int end) {
+            this.temp = temp;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    };
 
     /**
-     * Assign registers to temps in a code fragment
+     * Assign registers to temps in a code fragment.
+     * 
+     * If there are not enough registers, temps are spilled to the stack frame
+     * and allocation is attempted again with the rewritten code.
      * 
      * @return Map from temp to register
      */
     public static Map<NameOfTemp, String> assign(final CodeFragment frag) {
-        // Initialize register pool
-        s_regPool = new Pool();
+        // Temps created for spill code (these should never be spilled)
+        final BitSet spillTemps = new BitSet();
 
-        // All "alive" allocations (not yet freed)
-        Map<NameOfTemp, String> alive = new HashMap<>();
+        while (true) {
+            // Temps which did not get a register
+            final List<NameOfTemp> spilled = new ArrayList<>();
+
+            final Map<NameOfTemp, String> map = linearScan(frag, spillTemps, spilled);
+
+            // Everything fits (or nothing can be done)
+            if (spilled.isEmpty()) {
+                return map;
+            }
+
+            // Move temps to the stack, and try again
+            spill(frag, spilled, spillTemps);
+            frag.lifetimes = Lifetime.analyze(frag);
+        }
+    }
+
+    /**
+     * Assign registers to temps in a code fragment, by linear scan over the live
+     * intervals.
+     * 
+     * @param frag       Code fragment
+     * @param spillTemps Indices of temps which cannot be spilled
+     * @param spilled    (Output) Temps which need to be spilled
+     * @return Map from temp to register
+     */
+    private static Map<NameOfTemp, String> linearScan(final CodeFragment frag,
+            final BitSet spillTemps, final List<NameOfTemp> spilled) {
+        // Initialize register pool
+        final Pool regPool = new Pool();
 
         // Final register map
-        Map<NameOfTemp, String> map = new HashMap<>() {
+        final Map<NameOfTemp, String> map = newRegisterMap();
+
+        // All "alive" allocations (not yet freed), ordered by when they end
+        final PriorityQueue<Interval> alive = new PriorityQueue<>(
+                Comparator.comparingInt((Interval it) -> it.end));
+
+        // Step through intervals (by start) and assign registers
+        for (final Interval it : buildIntervals(frag)) {
+            /**
+             * Free any registers that go out of use (from lifetimes)
+             */
+            while (!alive.isEmpty() && alive.peek().end <= it.start) {
+                final Interval over = alive.poll();
+
+                // Free register
+                if (regPool.release(over.reg)) {
+                    Logger.logTraceLn(() -> String.format(
+                            "Freeing register %s because lifetime is over (end: %04d, insn: %04d)",
+                            over.reg, over.end - 1, it.start));
+                }
+            }
+
+            /**
+             * Assign new reg for definition
+             */
+            // First-come, first-serve
+            String reg = regPool.acquire();
+
+            // Out of registers, take one from the cheapest interval
+            if (reg == null) {
+                final Interval victim = chooseSpill(frag, alive, it, spillTemps);
+
+                if (victim == null) {
+                    Logger.addError("RegAlloc error: Ran out of registers in %s, and nothing can be spilled",
+                            frag.getName());
+                    spilled.clear();
+                    return map;
+                }
+
+                Logger.logTraceLn(() -> "Spilling temp " + victim.temp);
+                spilled.add(victim.temp);
+
+                // Current interval is the one going to the stack
+                if (victim == it) {
+                    continue;
+                }
+
+                // Steal register from the spilled temp
+                alive.remove(victim);
+                map.remove(victim.temp);
+                reg = victim.reg;
+            }
+
+            final String allocReg = reg;
+            Logger.logTraceLn(() -> String.format("Allocated register %s for temp %s", allocReg, it.temp));
+
+            // Save allocation
+            assert !map.containsKey(it.temp) : "Double-allocation???";
+            map.put(it.temp, reg);
+
+            // Mark allocation as alive
+            it.reg = reg;
+            alive.add(it);
+        }
+
+        return map;
+    }
+
+    /**
+     * Create map from temp to register.
+     * Temps missing from the map keep their original names.
+     */
+    static Map<NameOfTemp, String> newRegisterMap() {
+        return new HashMap<>() {
             @Override
             public String get(Object key) {
                 assert key instanceof NameOfTemp : "WHY!!!";
@@ -50,42 +184,152 @@ public final class Allocator {
                 return super.get(t);
             }
         };
+    }
 
-        // Step through code instructions and assign registers
-        for (int i = 0; i < frag.code.size(); i++) {
-            final Instruction insn = frag.code.get(i);
+    /**
+     * Choose which temp to spill when the registers run out.
+     * 
+     * The temp with the lowest use density (references per instruction of its
+     * interval) is the cheapest to keep in memory. Ties go to the interval which
+     * ends last, as it would keep its register the longest.
+     * 
+     * @param frag       Code fragment
+     * @param alive      Intervals currently holding registers
+     * @param current    Interval needing a register
+     * @param spillTemps Indices of temps which cannot be spilled
+     * @return Interval to spill (null if none can be)
+     */
+    private static Interval chooseSpill(final CodeFragment frag,
+            final Collection<Interval> alive, final Interval current,
+            final BitSet spillTemps) {
+        Interval best = null;
+        double bestCost = Double.MAX_VALUE;
 
-            /**
-             * Free any registers that go out of use (from lifetimes)
-             */
-            for (final TEMP t : frag.tempMgr.children()) {
-                // Temp is not being used
-                if (!alive.containsKey(t.temp)) {
-                    continue;
+        for (final Interval it : Util.concatList(new ArrayList<>(alive), Util.singleList(current))) {
+            // Spilling these would not free anything up
+            if (spillTemps.get(it.index)) {
+                continue;
+            }
+
+            final double cost = (double) frag.lifetimes.get(it.temp).getNumRefs()
+                    / (it.end - it.start);
+
+            if (best == null || cost < bestCost
+                    || (cost == bestCost && it.end > best.end)) {
+                best = it;
+                bestCost = cost;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Rewrite code so that spilled temps live in stack slots.
+     * 
+     * Every instruction which references a spilled temp gets its own new temp,
+     * loaded from the stack slot before the instruction (if read), and stored
+     * back after it (if written).
+     * 
+     * @param frag       Code fragment
+     * @param spilled    Temps to spill
+     * @param spillTemps (Output) Indices of temps created for the spill code
+     */
+    static void spill(final CodeFragment frag, final Collection<NameOfTemp> spilled,
+            final BitSet spillTemps) {
+        Metrics.count("spills", spilled.size());
+
+        // Stack slot of each spilled temp (by temp index)
+        final int[] slots = new int[frag.tempMgr.size()];
+        Arrays.fill(slots, -1);
+        for (final NameOfTemp t : spilled) {
+            slots[frag.tempMgr.indexOf(t)] = frag.allocSpillSlot();
+        }
+
+        final List<Instruction> code = new ArrayList<>();
+
+        for (final Instruction insn : frag.code) {
+            // Replacement temps for this instruction
+            final Map<NameOfTemp, NameOfTemp> repl = new HashMap<>();
+
+            for (final NameOfTemp t : Util.concatList(insn.def(), insn.use())) {
+                final int index = frag.tempMgr.indexOf(t);
+
+                if (index != -1 && index < slots.length && slots[index] != -1
+                        && !repl.containsKey(t)) {
+                    final NameOfTemp newTemp = frag.tempMgr.create("spill").temp;
+                    spillTemps.set(frag.tempMgr.indexOf(newTemp));
+                    repl.put(t, newTemp);
                 }
+            }
 
-                // Check lifetime
-                final Lifetime life = frag.lifetimes.get(t.temp);
-                assert life != null : "Missing lifetime?";
+            // Instruction does not reference any spilled temps
+            if (repl.isEmpty()) {
+                code.add(insn);
+                continue;
+            }
 
-                // Is lifetime over?
-                if (i > life.endIndex) {
-                    final String reg = alive.get(t.temp);
+            // Reload before the instruction
+            for (final NameOfTemp t : Arch.get().getInsnReads(insn)) {
+                if (repl.containsKey(t)) {
+                    code.add(Arch.get().loadLocalInsn(repl.get(t), slots[frag.tempMgr.indexOf(t)]));
+                }
+            }
 
-                    // Free register
-                    if (s_regPool.release(reg)) {
-                        Logger.logVerboseLn("Freeing register %s because lifetime is over (end: %04d, insn: %04d)",
-                                reg, life.endIndex, i);
-                    }
+            code.add(replaceTemps(insn, repl));
 
-                    // Remove from alive list
-                    alive.remove(t.temp);
+            // Store after the instruction
+            for (final NameOfTemp t : Arch.get().getInsnWrites(insn)) {
+                if (repl.containsKey(t)) {
+                    code.add(Arch.get().storeLocalInsn(repl.get(t), slots[frag.tempMgr.indexOf(t)]));
                 }
             }
+        }
+
+        frag.code = code;
+    }
+
+    /**
+     * Create copy of an instruction with some temps replaced
+     * 
+     * @param insn Instruction
+     * @param repl Map from old temp to new temp
+     */
+    private static Instruction replaceTemps(final Instruction insn,
+            final Map<NameOfTemp, NameOfTemp> repl) {
+        final List<NameOfTemp> d = new ArrayList<>();
+        for (final NameOfTemp t : Util.concatList(insn.def(), null)) {
+            d.add(repl.getOrDefault(t, t));
+        }
+
+        final List<NameOfTemp> s = new ArrayList<>();
+        for (final NameOfTemp t : Util.concatList(insn.use(), null)) {
+            s.add(repl.getOrDefault(t, t));
+        }
+
+        return Arch.get().copyInsn(insn, d, s);
+    }
+
+    /**
+     * Build live intervals for all temps in a code fragment.
+     * 
+     * A temp gets its register at its first definition, and keeps it until the
+     * end of its lifetime (see optimize.Lifetime). If the temp is live before
+     * its first definition (i.e. around a loop), the interval starts earlier.
+     * 
+     * Intervals are collected in code order, and then sorted by their start
+     * (the sort is stable, so ties are broken by definition order).
+     * 
+     * @return Intervals sorted by start
+     */
+    private static List<Interval> buildIntervals(final CodeFragment frag) {
+        final List<Interval> intervals = new ArrayList<>();
+        // Temps which already have an interval (by temp index)
+        final BitSet defined = new BitSet();
+
+        for (int i = 0; i < frag.code.size(); i++) {
+            final Instruction insn = frag.code.get(i);
 
-            /**
-             * Assign new regs for definitions
-             */
             // No definitions in this instruction
             if (insn.def() == null) {
                 continue;
@@ -93,33 +337,27 @@ public final class Allocator {
 
             for (final NameOfTemp def : insn.def()) {
                 // Not *actually* a temp (maybe some known register)
-                if (!frag.tempMgr.isChild(def)) {
+                final int index = frag.tempMgr.indexOf(def);
+                if (index == -1) {
                     continue;
                 }
 
-                // Already assigned a register?
-                if (map.containsKey(def)) {
+                // Already defined earlier
+                if (defined.get(index)) {
                     continue;
                 }
 
-                // First-come, first-serve
-                final String reg = s_regPool.acquire();
-                Logger.logVerboseLn("Allocated register %s for temp %s", reg, def);
-
-                if (reg != null) {
-                    // Save allocation
-                    assert !map.containsKey(def) : "Double-allocation???";
-                    map.put(def, reg);
+                defined.set(index);
+                final Lifetime life = frag.lifetimes.get(def);
 
-                    // Mark allocation as alive
-                    alive.put(def, reg);
-                } else {
-                    Logger.logVerbose("Ran out of registers, and I cannot spill!");
-                    return map;
-                }
+                // Register is free once the lifetime is over
+                // (or immediately after, if the temp is never used again)
+                intervals.add(new Interval(def, index, Math.min(i, life.getLiveStart()),
+                        Math.max(i, life.getLiveEnd()) + 1));
             }
         }
 
-        return map;
+        intervals.sort(Comparator.comparingInt((Interval it) -> it.start));
+        return intervals;
     }
 }
@@ -0,0 +1,832 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package regalloc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import codegen.CodeFragment;
+import main.Arch;
+import main.Logger;
+import optimize.Lifetime;
+import optimize.Liveness;
+import graph.InterferenceGraph;
+import graph.Node;
+import tree.*;
+import assem.*;
+
+/**
+ * Register allocator (graph coloring)
+ * 
+ * Chaitin-Briggs allocator with iterated (conservative) coalescing of MOV
+ * instructions, as described in Appel chapter 11. Unlike the linear scan
+ * allocator, this one can use every allocatable register of the target
+ * (see Arch.getAllocatableRegisters), because the interference graph knows
+ * which machine registers are in use at every point of the code.
+ */
+public final class ColoringAllocator {
+    /**
+     * Spill worklist entry (see selectSpill)
+     */
+    private static final class SpillCandidate {
+        // High-degree node
+        final Node node;
+        // Spill cost of the node when the entry was made
+        final double cost;
+        // Index of the node (breaks ties)
+        final int index;
+
+        public SpillCandidate(final Node node, final double cost, final int index) {
+            this.node = node;
+            this.cost = cost;
+            this.index = index;
+        }
+    }
+
+    // Degree given to machine registers (they can never be simplified)
+    private static final int sc_infiniteDegree = Integer.MAX_VALUE / 2;
+    // Odd multiplier to spread edge keys over the hash table (see edgeKey)
+    private static final long sc_edgeKeyMix = 0x9E3779B97F4A7C15L;
+
+    // Code fragment being allocated
+    private final CodeFragment m_frag;
+    // Temps which cannot be spilled (created for spill code)
+    private final BitSet m_spillTemps;
+
+    // Registers which can be assigned (colors)
+    private final List<NameOfTemp> m_colors = new ArrayList<>();
+    // Graph node of each temp (edges are kept in m_adjSet/m_adjList)
+    private final InterferenceGraph m_graph = new InterferenceGraph();
+    // Interference edges (for fast lookup)
+    private final Set<Long> m_adjSet = new HashSet<>();
+    // Neighbors of each temp node (machine registers don't keep a list)
+    private final Map<Node, List<Node>> m_adjList = new HashMap<>();
+    // Index of each graph node
+    private final Map<Node, Integer> m_indices = new HashMap<>();
+
+    // Machine register nodes (already colored)
+    private final Set<Node> m_precolored = new HashSet<>();
+    // Temp nodes (not yet processed)
+    private final Set<Node> m_initial = new LinkedHashSet<>();
+    // Low-degree, non-move-related nodes
+    private final Set<Node> m_simplifyWorklist = new LinkedHashSet<>();
+    // Low-degree, move-related nodes
+    private final Set<Node> m_freezeWorklist = new LinkedHashSet<>();
+    // High-degree nodes
+    private final Set<Node> m_spillWorklist = new LinkedHashSet<>();
+    // High-degree nodes by spill cost (entries may be out of date)
+    private final PriorityQueue<SpillCandidate> m_spillCandidates = new PriorityQueue<>(
+            Comparator.comparingDouble((SpillCandidate c) -> c.cost).thenComparingInt(c -> c.index));
+    // Nodes marked for spilling
+    private final Set<Node> m_spilledNodes = new LinkedHashSet<>();
+    // Nodes which were coalesced into another node
+    private final Set<Node> m_coalescedNodes = new HashSet<>();
+    // Nodes which were successfully colored
+    private final Set<Node> m_coloredNodes = new HashSet<>();
+    // Nodes removed from the graph
+    private final ArrayDeque<Node> m_selectStack = new ArrayDeque<>();
+    // Nodes in the above stack (for fast lookup)
+    private final Set<Node> m_selectSet = new HashSet<>();
+
+    // Moves which have been coalesced
+    private final Set<Instruction> m_coalescedMoves = new HashSet<>();
+    // Moves whose source and destination interfere
+    private final Set<Instruction> m_constrainedMoves = new HashSet<>();
+    // Moves which will no longer be considered for coalescing
+    private final Set<Instruction> m_frozenMoves = new HashSet<>();
+    // Moves enabled for possible coalescing
+    private final Set<Instruction> m_worklistMoves = new LinkedHashSet<>();
+    // Moves not yet ready for coalescing
+    private final Set<Instruction> m_activeMoves = new HashSet<>();
+
+    // Current degree of each node
+    private final Map<Node, Integer> m_degree = new HashMap<>();
+    // Number of references to each temp node (for spill costs)
+    private final Map<Node, Integer> m_numRefs = new HashMap<>();
+    // Number of high-degree neighbors (still in the graph) of each temp node
+    private final Map<Node, Integer> m_highNeighbors = new HashMap<>();
+    // Moves of each node which may still be coalesced (worklist or active)
+    private final Map<Node, Set<Instruction>> m_moveList = new HashMap<>();
+    // Active moves of each node (subset of the above)
+    private final Map<Node, Set<Instruction>> m_activeList = new HashMap<>();
+    // Nodes whose move lists contain each move
+    private final Map<Instruction, List<Node>> m_moveNodes = new HashMap<>();
+    // Node which a coalesced node was merged into
+    private final Map<Node, Node> m_alias = new HashMap<>();
+    // Color (register index) of each node
+    private final Map<Node, Integer> m_color = new HashMap<>();
+
+    /**
+     * Assign registers to temps in a code fragment.
+     * 
+     * If the graph cannot be colored, temps are spilled to the stack frame
+     * and allocation is attempted again with the rewritten code.
+     * 
+     * @return Map from temp to register
+     */
+    public static Map<NameOfTemp, String> assign(final CodeFragment frag) {
+        // Temps created for spill code (these should never be spilled)
+        final BitSet spillTemps = new BitSet();
+
+        while (true) {
+            final ColoringAllocator alloc = new ColoringAllocator(frag, spillTemps);
+            alloc.color();
+
+            // Everything was colored
+            if (alloc.m_spilledNodes.isEmpty()) {
+                return alloc.finish();
+            }
+
+            // Nothing more can be spilled
+            if (alloc.m_spilledNodes.stream().allMatch(n -> spillTemps.get(frag.tempMgr.indexOf(alloc.temp(n))))) {
+                Logger.addError("RegAlloc error: Ran out of registers in %s, and nothing can be spilled",
+                        frag.getName());
+                return alloc.finish();
+            }
+
+            // Move temps to the stack, and try again
+            final List<NameOfTemp> spilled = new ArrayList<>();
+            for (final Node n : alloc.m_spilledNodes) {
+                Logger.logTraceLn(() -> "Spilling temp " + alloc.temp(n));
+                spilled.add(alloc.temp(n));
+            }
+
+            Allocator.spill(frag, spilled, spillTemps);
+            frag.lifetimes = Lifetime.analyze(frag);
+        }
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param frag       Code fragment to allocate
+     * @param spillTemps Indices of temps which cannot be spilled
+     */
+    private ColoringAllocator(final CodeFragment frag, final BitSet spillTemps) {
+        m_frag = frag;
+        m_spillTemps = spillTemps;
+
+        // Machine registers are pre-colored nodes
+        for (final Exp e : Arch.get().getAllocatableRegisters(frag)) {
+            assert e instanceof TEMP;
+            final NameOfTemp reg = ((TEMP) e).temp;
+
+            final Node n = ensureNode(reg);
+            m_precolored.add(n);
+            m_degree.put(n, sc_infiniteDegree);
+            m_color.put(n, m_colors.size());
+            m_colors.add(reg);
+        }
+
+        // Fragment temps need colors
+        for (final Map.Entry<NameOfTemp, Lifetime> e : frag.lifetimes.entrySet()) {
+            final Node n = ensureNode(e.getKey());
+            m_initial.add(n);
+            m_numRefs.put(n, e.getValue().getNumRefs());
+            m_degree.put(n, 0);
+            m_highNeighbors.put(n, 0);
+            m_adjList.put(n, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Run the coloring algorithm
+     */
+    private void color() {
+        build();
+        makeWorklist();
+
+        while (true) {
+            if (!m_simplifyWorklist.isEmpty()) {
+                simplify();
+            } else if (!m_worklistMoves.isEmpty()) {
+                coalesce();
+            } else if (!m_freezeWorklist.isEmpty()) {
+                freeze();
+            } else if (!m_spillWorklist.isEmpty()) {
+                selectSpill();
+            } else {
+                break;
+            }
+        }
+
+        assignColors();
+    }
+
+    /**
+     * Build the final register map, and remove moves which became no-ops
+     * 
+     * @return Map from temp to register
+     */
+    private Map<NameOfTemp, String> finish() {
+        final Map<NameOfTemp, String> map = Allocator.newRegisterMap();
+
+        for (final Node n : m_initial) {
+            final Integer c = m_color.get(n);
+
+            if (c != null) {
+                Logger.logTraceLn(() -> String.format("Allocated register %s for temp %s",
+                        m_colors.get(c), temp(n)));
+                map.put(temp(n), m_colors.get(c).toString());
+            }
+        }
+
+        // Coalesced moves copy a register to itself
+        m_frag.code.removeIf(insn -> Arch.get().isMoveInsn(insn)
+                && map.get(insn.use().get(0)).equals(map.get(insn.def().get(0))));
+
+        return map;
+    }
+
+    /**
+     * Build interference graph from liveness information.
+     * Each block is walked backwards from its live-out set, so the temps live
+     * after every instruction are known.
+     */
+    private void build() {
+        // Only machine registers/temps take part in allocation
+        final Set<NameOfTemp> universe = new HashSet<>(m_colors);
+        universe.addAll(m_frag.lifetimes.keySet());
+        final Liveness liveness = new Liveness(m_frag.code, universe);
+
+        for (int b = 0; b < liveness.getNumBlocks(); b++) {
+            final Set<NameOfTemp> live = liveness.liveOut(b);
+
+            for (int i = liveness.getBlockEnd(b); i >= liveness.getBlockStart(b); i--) {
+                final Instruction insn = m_frag.code.get(i);
+                final List<NameOfTemp> defs = Arch.get().getInsnWrites(insn);
+
+                // Moves do not make their source/destination interfere
+                if (Arch.get().isMoveInsn(insn) && liveness.isTracked(insn.use().get(0))
+                        && liveness.isTracked(insn.def().get(0))) {
+                    live.remove(insn.use().get(0));
+                    m_worklistMoves.add(insn);
+
+                    for (final NameOfTemp t : insn.temps()) {
+                        addMove(getNode(t), insn);
+                    }
+                }
+
+                // Definitions interfere with everything live after them
+                for (final NameOfTemp d : defs) {
+                    if (!liveness.isTracked(d)) {
+                        continue;
+                    }
+
+                    for (final NameOfTemp l : live) {
+                        addEdge(getNode(l), getNode(d));
+                    }
+                }
+
+                // Step backwards over the instruction
+                live.removeAll(defs);
+                for (final NameOfTemp u : Arch.get().getInsnReads(insn)) {
+                    if (liveness.isTracked(u)) {
+                        live.add(u);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add interference edge between two nodes
+     */
+    private void addEdge(final Node u, final Node v) {
+        if (u == v || m_adjSet.contains(edgeKey(u, v))) {
+            return;
+        }
+
+        m_adjSet.add(edgeKey(u, v));
+        m_adjSet.add(edgeKey(v, u));
+
+        if (!m_precolored.contains(u)) {
+            m_adjList.get(u).add(v);
+            if (isHighDegree(v)) {
+                m_highNeighbors.merge(u, 1, Integer::sum);
+            }
+        }
+
+        if (!m_precolored.contains(v)) {
+            m_adjList.get(v).add(u);
+            if (isHighDegree(u)) {
+                m_highNeighbors.merge(v, 1, Integer::sum);
+            }
+        }
+
+        if (!m_precolored.contains(u)) {
+            incrementDegree(u);
+        }
+
+        if (!m_precolored.contains(v)) {
+            incrementDegree(v);
+        }
+    }
+
+    /**
+     * Raise the degree of a node (because a neighbor was added)
+     */
+    private void incrementDegree(final Node n) {
+        final int d = m_degree.get(n);
+        m_degree.put(n, d + 1);
+
+        // Node just became high-degree
+        if (d + 1 == m_colors.size()) {
+            updateHighNeighbors(n, 1);
+        }
+
+        // Spill cost went down
+        if (m_spillWorklist.contains(n)) {
+            addSpillCandidate(n);
+        }
+    }
+
+    /**
+     * Check whether a node has K or more neighbors
+     */
+    private boolean isHighDegree(final Node n) {
+        return m_degree.get(n) >= m_colors.size();
+    }
+
+    /**
+     * Update the high-degree neighbor count of every neighbor of a node
+     * (because the node became high/low-degree, or left the graph)
+     * 
+     * @param n     Node
+     * @param delta Change in count
+     */
+    private void updateHighNeighbors(final Node n, final int delta) {
+        for (final Node t : m_adjList.get(n)) {
+            if (!m_precolored.contains(t)) {
+                m_highNeighbors.merge(t, delta, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Sort initial nodes into the worklists
+     */
+    private void makeWorklist() {
+        for (final Node n : m_initial) {
+            if (isHighDegree(n)) {
+                m_spillWorklist.add(n);
+                addSpillCandidate(n);
+            } else if (isMoveRelated(n)) {
+                m_freezeWorklist.add(n);
+            } else {
+                m_simplifyWorklist.add(n);
+            }
+        }
+    }
+
+    /**
+     * Check whether a neighbor has been removed from the graph
+     * (simplified or coalesced).
+     * Neighbors are checked in place instead of collecting the ones which
+     * are left, since machine registers neighbor most temps of a big method.
+     */
+    private boolean isRemoved(final Node n) {
+        return m_selectSet.contains(n) || m_coalescedNodes.contains(n);
+    }
+
+    /**
+     * Check whether a node may still be coalesced
+     */
+    private boolean isMoveRelated(final Node n) {
+        return !m_moveList.getOrDefault(n, Set.of()).isEmpty();
+    }
+
+    /**
+     * Add move to a node's move list (if it may still be coalesced)
+     */
+    private void addMove(final Node n, final Instruction m) {
+        if (!m_worklistMoves.contains(m) && !m_activeMoves.contains(m)) {
+            return;
+        }
+
+        if (m_moveList.computeIfAbsent(n, k -> new LinkedHashSet<>()).add(m)) {
+            m_moveNodes.computeIfAbsent(m, k -> new ArrayList<>()).add(n);
+
+            if (m_activeMoves.contains(m)) {
+                m_activeList.computeIfAbsent(n, k -> new LinkedHashSet<>()).add(m);
+            }
+        }
+    }
+
+    /**
+     * Put move aside until one of its nodes' neighbors changes degree
+     */
+    private void activateMove(final Instruction m) {
+        m_activeMoves.add(m);
+
+        for (final Node n : m_moveNodes.get(m)) {
+            m_activeList.computeIfAbsent(n, k -> new LinkedHashSet<>()).add(m);
+        }
+    }
+
+    /**
+     * Take move out of the active moves
+     * 
+     * @return Whether the move was active
+     */
+    private boolean deactivateMove(final Instruction m) {
+        if (!m_activeMoves.remove(m)) {
+            return false;
+        }
+
+        for (final Node n : m_moveNodes.get(m)) {
+            m_activeList.get(n).remove(m);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop considering move for coalescing (it was coalesced, constrained,
+     * or frozen)
+     */
+    private void retireMove(final Instruction m) {
+        m_worklistMoves.remove(m);
+        deactivateMove(m);
+
+        for (final Node n : m_moveNodes.get(m)) {
+            m_moveList.get(n).remove(m);
+        }
+    }
+
+    /**
+     * Remove a low-degree node from the graph
+     */
+    private void simplify() {
+        final Node n = m_simplifyWorklist.iterator().next();
+        m_simplifyWorklist.remove(n);
+
+        m_selectStack.push(n);
+        m_selectSet.add(n);
+
+        // Spill candidates leave the graph while still high-degree
+        if (isHighDegree(n)) {
+            updateHighNeighbors(n, -1);
+        }
+
+        for (final Node m : m_adjList.get(n)) {
+            if (!isRemoved(m)) {
+                decrementDegree(m);
+            }
+        }
+    }
+
+    /**
+     * Lower the degree of a node (because a neighbor was removed)
+     */
+    private void decrementDegree(final Node m) {
+        final int d = m_degree.get(m);
+        m_degree.put(m, d - 1);
+
+        // Node just became low-degree
+        if (d == m_colors.size()) {
+            updateHighNeighbors(m, -1);
+
+            // Neighbors now have one less high-degree neighbor, but one which
+            // still has K of them can't pass the Briggs test yet. A machine
+            // register's moves are also moves of its partners.
+            for (final Node n : m_adjList.get(m)) {
+                if (!isRemoved(n) && !m_precolored.contains(n)
+                        && m_highNeighbors.get(n) < m_colors.size()) {
+                    enableMoves(n);
+                }
+            }
+            enableMoves(m);
+
+            m_spillWorklist.remove(m);
+
+            if (isMoveRelated(m)) {
+                m_freezeWorklist.add(m);
+            } else {
+                m_simplifyWorklist.add(m);
+            }
+        }
+    }
+
+    /**
+     * Allow active moves of a node to be considered for coalescing again
+     */
+    private void enableMoves(final Node n) {
+        final Set<Instruction> active = m_activeList.get(n);
+
+        if (active == null || active.isEmpty()) {
+            return;
+        }
+
+        for (final Instruction m : new ArrayList<>(active)) {
+            deactivateMove(m);
+            m_worklistMoves.add(m);
+        }
+    }
+
+    /**
+     * Try to coalesce a move
+     */
+    private void coalesce() {
+        final Instruction m = m_worklistMoves.iterator().next();
+        m_worklistMoves.remove(m);
+
+        final Node x = getAlias(getNode(m.use().get(0)));
+        final Node y = getAlias(getNode(m.def().get(0)));
+
+        // Keep machine register as the representative
+        final Node u = m_precolored.contains(y) ? y : x;
+        final Node v = m_precolored.contains(y) ? x : y;
+
+        if (u == v) {
+            retireMove(m);
+            m_coalescedMoves.add(m);
+            addWorklist(u);
+        } else if (m_precolored.contains(v) || m_adjSet.contains(edgeKey(u, v))) {
+            retireMove(m);
+            m_constrainedMoves.add(m);
+            addWorklist(u);
+            addWorklist(v);
+        } else if (m_precolored.contains(u) ? georgeTest(u, v) : briggsTest(u, v)) {
+            retireMove(m);
+            m_coalescedMoves.add(m);
+            combine(u, v);
+            addWorklist(u);
+        } else {
+            activateMove(m);
+        }
+    }
+
+    /**
+     * Move a node to the simplify worklist, if it is done with coalescing
+     */
+    private void addWorklist(final Node u) {
+        if (!m_precolored.contains(u) && !isMoveRelated(u) && m_degree.get(u) < m_colors.size()) {
+            m_freezeWorklist.remove(u);
+            m_simplifyWorklist.add(u);
+        }
+    }
+
+    /**
+     * Coalescing test against a machine register (George):
+     * every neighbor of v either is low-degree, or already interferes with u
+     */
+    private boolean georgeTest(final Node u, final Node v) {
+        for (final Node t : m_adjList.get(v)) {
+            if (!isRemoved(t) && isHighDegree(t) && !m_precolored.contains(t)
+                    && !m_adjSet.contains(edgeKey(t, u))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Conservative coalescing test (Briggs):
+     * the merged node has fewer than K high-degree neighbors.
+     * 
+     * One node's high-degree neighbors are already counted, so only the
+     * shorter neighbor list is walked, for the neighbors which the other node
+     * doesn't share. Counting stops as soon as there are K of them.
+     */
+    private boolean briggsTest(final Node u, final Node v) {
+        final Node a = m_adjList.get(u).size() <= m_adjList.get(v).size() ? u : v;
+        final Node b = a == u ? v : u;
+
+        int k = m_highNeighbors.get(b);
+        if (k >= m_colors.size()) {
+            return false;
+        }
+
+        for (final Node n : m_adjList.get(a)) {
+            if (!isRemoved(n) && isHighDegree(n) && !m_adjSet.contains(edgeKey(n, b))
+                    && ++k >= m_colors.size()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the node which a (possibly coalesced) node was merged into
+     */
+    private Node getAlias(final Node n) {
+        Node a = n;
+        while (m_coalescedNodes.contains(a)) {
+            a = m_alias.get(a);
+        }
+
+        return a;
+    }
+
+    /**
+     * Merge node v into node u
+     */
+    private void combine(final Node u, final Node v) {
+        if (!m_freezeWorklist.remove(v)) {
+            m_spillWorklist.remove(v);
+        }
+
+        m_coalescedNodes.add(v);
+        m_alias.put(v, u);
+
+        if (isHighDegree(v)) {
+            updateHighNeighbors(v, -1);
+        }
+
+        for (final Instruction m : m_moveList.getOrDefault(v, Set.of())) {
+            addMove(u, m);
+        }
+
+        enableMoves(v);
+
+        for (final Node t : m_adjList.get(v)) {
+            if (!isRemoved(t)) {
+                addEdge(t, u);
+                decrementDegree(t);
+            }
+        }
+
+        if (isHighDegree(u) && m_freezeWorklist.remove(u)) {
+            m_spillWorklist.add(u);
+            addSpillCandidate(u);
+        }
+    }
+
+    /**
+     * Give up coalescing a low-degree node
+     */
+    private void freeze() {
+        final Node u = m_freezeWorklist.iterator().next();
+        m_freezeWorklist.remove(u);
+        m_simplifyWorklist.add(u);
+        freezeMoves(u);
+    }
+
+    /**
+     * Stop considering a node's moves for coalescing
+     */
+    private void freezeMoves(final Node u) {
+        for (final Instruction m : new ArrayList<>(m_moveList.getOrDefault(u, Set.of()))) {
+            final Node x = getNode(m.use().get(0));
+            final Node y = getNode(m.def().get(0));
+
+            final Node v = getAlias(y) == getAlias(u) ? getAlias(x) : getAlias(y);
+
+            retireMove(m);
+            m_frozenMoves.add(m);
+
+            if (!m_precolored.contains(v) && !isMoveRelated(v)
+                    && m_degree.get(v) < m_colors.size()) {
+                m_freezeWorklist.remove(v);
+                m_simplifyWorklist.add(v);
+            }
+        }
+    }
+
+    /**
+     * Choose a high-degree node to (potentially) spill.
+     * 
+     * The spill worklist isn't searched for the cheapest node every time.
+     * Candidates are kept in a heap instead, by their cost when they were
+     * added. A node's cost only goes down when its degree goes up (and then a
+     * new entry is added), so an entry whose cost is still current is the
+     * cheapest node. Out of date entries are refreshed when they come up.
+     */
+    private void selectSpill() {
+        while (true) {
+            final SpillCandidate c = m_spillCandidates.poll();
+
+            // Node left the spill worklist
+            if (!m_spillWorklist.contains(c.node)) {
+                continue;
+            }
+
+            // Node lost neighbors since the entry was made
+            final double cost = spillCost(c.node);
+            if (cost != c.cost) {
+                m_spillCandidates.add(new SpillCandidate(c.node, cost, c.index));
+                continue;
+            }
+
+            m_spillWorklist.remove(c.node);
+            m_simplifyWorklist.add(c.node);
+            freezeMoves(c.node);
+            return;
+        }
+    }
+
+    /**
+     * Add spill worklist node to the spill candidates (with its current cost)
+     */
+    private void addSpillCandidate(final Node n) {
+        m_spillCandidates.add(new SpillCandidate(n, spillCost(n), m_indices.get(n)));
+    }
+
+    /**
+     * Get cost of spilling a node.
+     * 
+     * Temps with few references for how many other temps they interfere with
+     * are the cheapest to keep in memory. Temps created by spill code are only
+     * chosen as a last resort.
+     */
+    private double spillCost(final Node n) {
+        if (m_spillTemps.get(m_frag.tempMgr.indexOf(temp(n)))) {
+            return Double.MAX_VALUE / 2;
+        }
+
+        return (double) m_numRefs.get(n) / m_degree.get(n);
+    }
+
+    /**
+     * Pop nodes from the select stack, and give them colors
+     */
+    private void assignColors() {
+        while (!m_selectStack.isEmpty()) {
+            final Node n = m_selectStack.pop();
+            m_selectSet.remove(n);
+
+            // Colors not used by any neighbors
+            final boolean[] used = new boolean[m_colors.size()];
+
+            for (final Node w : m_adjList.get(n)) {
+                final Node a = getAlias(w);
+
+                if (m_coloredNodes.contains(a) || m_precolored.contains(a)) {
+                    used[m_color.get(a)] = true;
+                }
+            }
+
+            // Lowest color is the most preferred
+            int c = 0;
+            while (c < used.length && used[c]) {
+                c++;
+            }
+
+            if (c == used.length) {
+                m_spilledNodes.add(n);
+            } else {
+                m_coloredNodes.add(n);
+                m_color.put(n, c);
+            }
+        }
+
+        for (final Node n : m_coalescedNodes) {
+            final Integer c = m_color.get(getAlias(n));
+
+            if (c != null) {
+                m_color.put(n, c);
+            }
+        }
+    }
+
+    /**
+     * Get (or create) graph node of a temp
+     */
+    private Node ensureNode(final NameOfTemp t) {
+        final Node n = m_graph.ensureNode(t);
+        m_indices.putIfAbsent(n, m_indices.size());
+        return n;
+    }
+
+    /**
+     * Get graph node of a temp
+     */
+    private Node getNode(final NameOfTemp t) {
+        return m_graph.getNode(t);
+    }
+
+    /**
+     * Get temp of a graph node
+     */
+    private NameOfTemp temp(final Node n) {
+        return m_graph.getTemp(n);
+    }
+
+    /**
+     * Key of (directed) edge for the adjacency set.
+     * 
+     * Long hashes to (high ^ low), so the plain (u, v) pair would put every
+     * edge (u ^ c, v ^ c) in the same bucket. Multiplying by an odd constant
+     * mixes the bits without making two edges share a key.
+     */
+    private long edgeKey(final Node u, final Node v) {
+        return (((long) m_indices.get(u) << 32) | m_indices.get(v)) * sc_edgeKeyMix;
+    }
+}
@@ -7,9 +7,14 @@
 
 package regalloc;
 
+import main.CompilationContext;
+import main.Config;
 import main.Logger;
+import main.Metrics;
 import codegen.CodeFragment;
 
+import java.util.HashSet;
+
 /**
  * Wrapper for "register allocation phase" of compiler
  */
@@ -25,23 +30,45 @@ public final class Phase {
      * Perform register allocation phase of compiler.
      * Allocate registers for temps throughout the code fragments
      * 
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute() {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
         initialize();
 
         // Allocate registers!!!
-        for (final CodeFragment frag : codegen.Phase.getCodeFragments()) {
-            Logger.logVerboseLn("==========Begin register allocation for fragment %s==========",
-                    frag.getName());
+        // Fragments are independent, so they are processed in parallel
+        ctx.parallelForEach(ctx.getCodeFragments(), Phase::allocateFragment);
 
-            // Allocate registers
-            frag.map = Allocator.assign(frag);
+        return true;
+    }
 
-            Logger.logVerboseLn("");
+    /**
+     * Allocate registers for temps in a code fragment
+     * 
+     * @param frag Code fragment
+     */
+    public static void allocateFragment(final CodeFragment frag) {
+        Logger.logVerboseLn("==========Begin register allocation for fragment %s==========",
+                frag.getName());
+        Metrics.begin("RegAlloc");
+
+        // Allocate registers
+        switch (Config.getRegAlloc()) {
+            case Coloring:
+                frag.map = ColoringAllocator.assign(frag);
+                break;
+            case LinearScan:
+            default:
+                frag.map = Allocator.assign(frag);
+                break;
         }
 
-        return true;
+        Metrics.count("instructions", frag.code.size());
+        Metrics.count("registers", new HashSet<>(frag.map.values()).size());
+        Metrics.end(frag.getName());
+
+        Logger.logVerboseLn("");
     }
 }
\ No newline at end of file
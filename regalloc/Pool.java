@@ -8,7 +8,10 @@
 package regalloc;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import main.Arch;
 
@@ -18,22 +21,12 @@ import tree.*;
  * Pool of available registers doing allocation
  */
 public final class Pool {
-    /**
-     * Register in the pool
-     */
-    static final class Register {
-        // Register temp/name
-        String name;
-        // Whether the register is free
-        boolean free = true;
-
-        public Register(final String name) {
-            this.name = name;
-        }
-    };
-
-    // All local registers
-    private final List<Register> m_regs = new ArrayList<>();
+    // All local registers (in order of preference)
+    private final List<String> m_regs = new ArrayList<>();
+    // Index of each register in the above list
+    private final Map<String, Integer> m_indices = new HashMap<>();
+    // Which registers are free
+    private final BitSet m_free = new BitSet();
 
     public Pool() {
         final List<Exp> regs = Arch.get().getAllLocalRegisters();
@@ -42,8 +35,11 @@ public final class Pool {
             assert e instanceof TEMP;
             final TEMP t = (TEMP) e;
 
-            m_regs.add(new Register(t.temp.toString()));
+            m_indices.put(t.temp.toString(), m_regs.size());
+            m_regs.add(t.temp.toString());
         }
+
+        m_free.set(0, m_regs.size());
     }
 
     /**
@@ -51,15 +47,15 @@ public final class Pool {
      */
     public String acquire() {
         // Find first available register
-        for (final Register reg : m_regs) {
-            if (reg.free) {
-                reg.free = false;
-                return reg.name;
-            }
-        }
+        final int i = m_free.nextSetBit(0);
 
         // No more registers... :(
-        return null;
+        if (i < 0) {
+            return null;
+        }
+
+        m_free.clear(i);
+        return m_regs.get(i);
     }
 
     /**
@@ -69,13 +65,13 @@ public final class Pool {
      * @return Whether the register was able to be freed
      */
     public boolean release(final String name) {
-        for (final Register reg : m_regs) {
-            if (reg.name.equals(name) && reg.free == false) {
-                reg.free = true;
-                return true;
-            }
+        final Integer i = m_indices.get(name);
+
+        if (i == null || m_free.get(i)) {
+            return false;
         }
 
-        return false;
+        m_free.set(i);
+        return true;
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+class Main {
+    public static void main(String[] a) {
+        System.out.println(new ConstantPropagationTest().execute(10));
+    }
+}
+
+class ConstantPropagationTest {
+    public int execute(int n) {
+        int x;
+        int y;
+        int i;
+        int sum;
+        boolean debug;
+
+        // Constant through locals (x = 12, y = 17)
+        x = 4 * 3;
+        y = x + 5;
+
+        // Branch on a constant, the else arm is deleted
+        if (x < y) {
+            x = x + 1; // x = 13
+        } else {
+            x = 0;
+        }
+
+        // Both arms assign the same value, x = 13 after the merge
+        if (n < 5) {
+            y = 13;
+        } else {
+            y = x;
+        }
+
+        // Never true, so the loop never changes debug
+        debug = false;
+        i = 0;
+        sum = 0;
+        while (i < n) {
+            if (debug) {
+                System.out.println(999);
+                debug = false;
+            } else {
+                sum = sum + y;
+            }
+            i = i + 1;
+        }
+
+        // Not constant (depends on the argument)
+        System.out.println(sum); // 130
+
+        // Constant loop condition on a variable which changes
+        i = 0;
+        while (i < 3) {
+            x = x + i;
+            i = i + 1;
+        }
+
+        return x; // 16
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+class Main {
+    public static void main(String[] a) {
+        System.out.println(new Zoo().run());
+    }
+}
+
+class Zoo {
+    public int run() {
+        Animal x;
+        Animal y;
+        Animal z;
+        Dog d;
+        int sum;
+
+        x = new Animal();
+        y = new Dog();
+        z = new Puppy();
+        d = new Puppy();
+
+        sum = x.init(1);
+        sum = y.init(2);
+        sum = z.init(3);
+        sum = d.init(4);
+
+        // Overridden by Dog and Puppy
+        System.out.println(x.speak()); // 10
+        System.out.println(y.speak()); // 20
+        System.out.println(z.speak()); // 30
+        System.out.println(d.speak()); // 30
+
+        // Only declared by Animal (called directly)
+        System.out.println(y.getAge()); // 2
+        System.out.println(z.getAge()); // 3
+
+        // Overridden by Puppy, inherited by Dog
+        System.out.println(y.total()); // 22
+        System.out.println(z.total()); // 33
+        System.out.println(d.total()); // 34
+
+        // Call on a call result
+        System.out.println((z.self()).speak()); // 30
+
+        // Dog fields come after Animal fields (and the vtable pointer)
+        System.out.println(d.fetch()); // 40
+
+        sum = (x.speak()) + (y.speak()) + (z.speak());
+        return sum; // 60
+    }
+}
+
+class Animal {
+    int age;
+
+    public int init(int a) {
+        age = a;
+        return 0;
+    }
+
+    public int speak() {
+        return 10;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public int total() {
+        return (this.speak()) + age;
+    }
+
+    public Animal self() {
+        return this;
+    }
+}
+
+class Dog extends Animal {
+    int toy;
+
+    public int speak() {
+        return 20;
+    }
+
+    public int fetch() {
+        toy = age * 10;
+        return toy;
+    }
+}
+
+class Puppy extends Dog {
+    public int speak() {
+        return 30;
+    }
+
+    public int total() {
+        return (this.speak()) + (this.getAge()) + 0;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+class Main {
+    public static void main(String[] a) {
+        System.out.println(new RegisterPressure().execute(1));
+    }
+}
+
+class RegisterPressure {
+    public int execute(int x) {
+        int a;
+        int b;
+        int c;
+        int d;
+        int e;
+        int f;
+        int g;
+        int h;
+        int i;
+        int j;
+        int k;
+        int l;
+
+        a = x + 1; // 2
+        b = a + 1; // 3
+        c = b + 1; // 4
+        d = c + 1; // 5
+        e = d + 1; // 6
+        f = e + 1; // 7
+        g = f + 1; // 8
+        h = g + 1; // 9
+        i = h + 1; // 10
+        j = i + 1; // 11
+        k = j + 1; // 12
+        l = k + 1; // 13
+
+        // Operators are right-associative, so every left operand stays in a
+        // register until the innermost expression is done (more than %l0-%l7)
+        System.out.println(a + (b + (c + (d + (e + (f + (g + (h + (i + (j + (k + l))))))))))); // 90
+
+        // Same, but with function calls in the middle of the expression
+        System.out.println(a * (b + (c * (d + ((this.twice(e)) + (f * (g + ((this.twice(h)) + (i * (j + (k * l))))))))))); // 95118
+
+        return a + (b - (c + (d - (e + (f - (g + (h - (i + (j - (k + l)))))))))); // -12
+    }
+
+    public int twice(int n) {
+        return n + n;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package translate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import tree.*;
+
+/**
+ * Wrapper around the canonicalizer (canon.Main) for one compilation.
+ * 
+ * The canonicalizer names its new temps/labels ("call001", "BB$begin001", etc.)
+ * using static counters in the support library, which every compilation in
+ * the JVM shares (without any locking). Those names depend on whatever else
+ * was compiled first, and parallel compilations can even get the same one.
+ * So every temp/label which the canonicalizer made up is renamed afterwards,
+ * numbered by this compilation in order of first use. The output of a file is
+ * then the same no matter how (or with what) it is compiled.
+ */
+public final class Canonicalizer {
+    // Temps/labels numbered by the canonicalizer end with their number
+    private static final String sc_numberSuffix = "[0-9]+$";
+
+    // Next temp number of this compilation
+    private int m_tempCount = 0;
+    // Next label number of this compilation
+    private int m_labelCount = 0;
+
+    /**
+     * Canonicalize/linearize IR tree
+     * 
+     * @param stm IR tree
+     * @return Linearized IR
+     */
+    public List<Stm> transform(final Stm stm) {
+        final IRCopier renamer = renamer(findNames(Collections.singletonList(stm)));
+
+        final List<Stm> linear = new ArrayList<>();
+        for (final Stm s : canon.Main.transform(stm)) {
+            linear.add(renamer.copy(s));
+        }
+
+        return linear;
+    }
+
+    /**
+     * Split linearized IR into basic blocks (see canon.BasicBlocks).
+     * The first statement of each block is a label, and the last is a jump.
+     * Blocks without them get new ones, named the same way as by transform.
+     * 
+     * @param stms Linearized IR
+     * @return Basic blocks
+     */
+    public List<List<Stm>> makeBlocks(final List<Stm> stms) {
+        final IRCopier renamer = renamer(findNames(stms));
+
+        final List<List<Stm>> blocks = new ArrayList<>();
+        for (final List<Stm> block : canon.BasicBlocks.makeBlocks(stms)) {
+            final List<Stm> copy = new ArrayList<>(block.size());
+            for (final Stm s : block) {
+                copy.add(renamer.copy(s));
+            }
+
+            blocks.add(copy);
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Find the temps/labels used by IR.
+     * Names are compared by identity, since a name made up by the
+     * canonicalizer may be spelled the same as one of ours.
+     * 
+     * @param stms IR statements
+     * @return Temps (NameOfTemp) and labels (NameOfLabel)
+     */
+    private static Set<Object> findNames(final List<Stm> stms) {
+        final Set<Object> names = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        final IRCopier finder = new IRCopier() {
+            @Override
+            Exp temp(final TEMP n) {
+                names.add(n.temp);
+                return n;
+            }
+
+            @Override
+            NameOfLabel label(final NameOfLabel l) {
+                names.add(l);
+                return l;
+            }
+        };
+
+        for (final Stm stm : stms) {
+            finder.copy(stm);
+        }
+
+        return names;
+    }
+
+    /**
+     * Create copier which renames the temps/labels made up by the
+     * canonicalizer
+     * 
+     * @param known Temps/labels from the canonicalizer's input (see findNames)
+     */
+    private IRCopier renamer(final Set<Object> known) {
+        final Map<NameOfTemp, NameOfTemp> temps = new IdentityHashMap<>();
+        final Map<NameOfLabel, NameOfLabel> labels = new IdentityHashMap<>();
+
+        return new IRCopier() {
+            @Override
+            Exp temp(final TEMP n) {
+                if (known.contains(n.temp)) {
+                    return n;
+                }
+
+                return new TEMP(temps.computeIfAbsent(n.temp,
+                        t -> new NameOfTemp(rename(t.toString(), ++m_tempCount))));
+            }
+
+            @Override
+            NameOfLabel label(final NameOfLabel l) {
+                if (known.contains(l)) {
+                    return l;
+                }
+
+                return labels.computeIfAbsent(l,
+                        k -> new NameOfLabel(rename(k.toString(), ++m_labelCount)));
+            }
+        };
+    }
+
+    /**
+     * Replace the number of a temp/label name made up by the canonicalizer
+     * (same format as the support library)
+     * 
+     * @param name Temp/label name
+     * @param no   New number
+     */
+    private static String rename(final String name, final int no) {
+        return String.format("%s%03d", name.replaceFirst(sc_numberSuffix, ""), no);
+    }
+}
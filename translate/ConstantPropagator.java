@@ -0,0 +1,585 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package translate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import main.Logger;
+import main.Metrics;
+
+import tree.*;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck, "Constant
+ * Propagation with Conditional Branches") over the SSA form of a fragment
+ * 
+ * Every version starts out unknown, and is lowered to a constant, and then
+ * to "varying" once it can have more than one value. Only blocks which can be
+ * reached with what is known so far are evaluated, and a branch whose
+ * condition is constant only reaches one of its targets. Phis only merge the
+ * versions coming from predecessors which can be reached.
+ * 
+ * Afterwards, versions which are constant are replaced by their values,
+ * branches with constant conditions become jumps, blocks which can't be
+ * reached are deleted, and assignments which are no longer used are removed.
+ */
+public final class ConstantPropagator {
+    /**
+     * Lattice value of a version
+     */
+    private static final class Value {
+        // Not known yet (no assignment has been evaluated)
+        static final Value UNKNOWN = new Value(0);
+        // Can have more than one value at runtime
+        static final Value VARYING = new Value(0);
+
+        // Constant value (unless this is UNKNOWN/VARYING)
+        final int constant;
+
+        /**
+         * Constructor
+         * 
+         * @param constant Constant value
+         */
+        Value(final int constant) {
+            this.constant = constant;
+        }
+
+        /**
+         * Check whether the value is a constant
+         */
+        boolean isConstant() {
+            return this != UNKNOWN && this != VARYING;
+        }
+
+        /**
+         * Check whether two values are the same
+         */
+        boolean same(final Value other) {
+            if (isConstant() && other.isConstant()) {
+                return constant == other.constant;
+            }
+
+            return this == other;
+        }
+
+        /**
+         * Merge two values (where control flow joins)
+         */
+        static Value meet(final Value x, final Value y) {
+            if (x == UNKNOWN) {
+                return y;
+            }
+
+            if (y == UNKNOWN) {
+                return x;
+            }
+
+            return x.same(y) ? x : VARYING;
+        }
+    }
+
+    /**
+     * Statement or phi using a version
+     */
+    private static final class Use {
+        // Block containing the use
+        final SSA.Block block;
+        // Using phi (null if it is a statement)
+        final SSA.Phi phi;
+        // Using statement (null if it is a phi)
+        final Stm stm;
+
+        /**
+         * Constructor
+         */
+        Use(final SSA.Block block, final SSA.Phi phi, final Stm stm) {
+            this.block = block;
+            this.phi = phi;
+            this.stm = stm;
+        }
+    }
+
+    // Fragment in SSA form
+    private final SSA m_ssa;
+    // Value of each version (missing if unknown)
+    private final HashMap<NameOfTemp, Value> m_values = new HashMap<>();
+    // Uses of each version
+    private final HashMap<NameOfTemp, List<Use>> m_uses = new HashMap<>();
+
+    // Whether each block has been reached
+    private final boolean[] m_reached;
+    // Whether each edge into a block has been taken (same order as Block.preds)
+    private final boolean[][] m_taken;
+
+    // Edges to take (from block, to block). The entry is reached from null
+    private final ArrayDeque<SSA.Block[]> m_flowWork = new ArrayDeque<>();
+    // Versions whose value was lowered
+    private final ArrayDeque<NameOfTemp> m_ssaWork = new ArrayDeque<>();
+
+    // Number of expressions (temps, or whole assignments) replaced by constants
+    private int m_numConstants = 0;
+    // Number of branches replaced by jumps
+    private int m_numBranches = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param ssa Fragment in SSA form
+     */
+    private ConstantPropagator(final SSA ssa) {
+        m_ssa = ssa;
+
+        final List<SSA.Block> blocks = ssa.getBlocks();
+        m_reached = new boolean[blocks.size()];
+        m_taken = new boolean[blocks.size()][];
+
+        for (final SSA.Block b : blocks) {
+            m_taken[b.index] = new boolean[b.preds.size()];
+
+            for (final SSA.Phi phi : b.phis) {
+                for (final NameOfTemp arg : phi.args) {
+                    addUse(arg, new Use(b, phi, null));
+                }
+            }
+
+            for (final Stm stm : b.stms) {
+                final Use use = new Use(b, null, stm);
+                SSA.forEachUse(stm, t -> addUse(t, use));
+            }
+        }
+    }
+
+    /**
+     * Propagate constants through a linearized IR fragment
+     * 
+     * @param frag  IR fragment (linearized)
+     * @param canon Canonicalizer (to split the fragment into blocks)
+     */
+    public static void propagate(final IRFragment frag, final Canonicalizer canon) {
+        Metrics.begin("Propagate");
+
+        final SSA ssa = new SSA(canon.makeBlocks(frag.linear));
+        Logger.logTraceLn(() -> String.format("SSA form of %s:%n%s", frag.getName(), ssa));
+
+        final ConstantPropagator sccp = new ConstantPropagator(ssa);
+        sccp.analyze();
+        sccp.rewrite();
+        sccp.removeDeadCode();
+
+        frag.linear = ssa.toLinear();
+
+        Metrics.count("constants", sccp.m_numConstants);
+        Metrics.count("branches", sccp.m_numBranches);
+        Metrics.end(frag.getName());
+    }
+
+    /**
+     * Find the value of every version, and which blocks can be reached
+     */
+    private void analyze() {
+        m_flowWork.add(new SSA.Block[] { null, m_ssa.getBlocks().get(0) });
+
+        while (!m_flowWork.isEmpty() || !m_ssaWork.isEmpty()) {
+            while (!m_flowWork.isEmpty()) {
+                final SSA.Block[] edge = m_flowWork.poll();
+                final SSA.Block b = edge[1];
+
+                // Edge has already been taken
+                if (edge[0] != null) {
+                    final int j = b.preds.indexOf(edge[0]);
+                    if (m_taken[b.index][j]) {
+                        continue;
+                    }
+
+                    m_taken[b.index][j] = true;
+                } else if (m_reached[b.index]) {
+                    continue;
+                }
+
+                // Phis depend on which edges have been taken
+                for (final SSA.Phi phi : b.phis) {
+                    visitPhi(b, phi);
+                }
+
+                // Statements only need to be evaluated the first time
+                if (!m_reached[b.index]) {
+                    m_reached[b.index] = true;
+
+                    for (final Stm stm : b.stms) {
+                        visitStm(b, stm);
+                    }
+                }
+            }
+
+            while (!m_ssaWork.isEmpty()) {
+                for (final Use use : m_uses.getOrDefault(m_ssaWork.poll(), new ArrayList<>())) {
+                    if (!m_reached[use.block.index]) {
+                        continue;
+                    }
+
+                    if (use.phi != null) {
+                        visitPhi(use.block, use.phi);
+                    } else {
+                        visitStm(use.block, use.stm);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate phi (merge the versions from the taken edges)
+     */
+    private void visitPhi(final SSA.Block b, final SSA.Phi phi) {
+        Value value = Value.UNKNOWN;
+
+        for (int j = 0; j < phi.args.length; j++) {
+            if (m_taken[b.index][j]) {
+                value = Value.meet(value, getValue(phi.args[j]));
+            }
+        }
+
+        setValue(phi.dst, value);
+    }
+
+    /**
+     * Evaluate statement (assignment or jump)
+     */
+    private void visitStm(final SSA.Block b, final Stm stm) {
+        final TEMP dst = SSA.getAssigned(stm);
+
+        if (dst != null) {
+            setValue(dst.temp, eval(((MOVE) stm).src));
+        } else if (stm instanceof CJUMP) {
+            final CJUMP n = (CJUMP) stm;
+            final Value left = eval(n.left);
+            final Value right = eval(n.right);
+
+            if (left.isConstant() && right.isConstant()) {
+                final NameOfLabel target = test(n.relop, left.constant, right.constant)
+                        ? n.iftrue
+                        : n.iffalse;
+                takeEdge(b, m_ssa.getBlock(target));
+            } else if (left == Value.VARYING || right == Value.VARYING) {
+                for (final SSA.Block succ : b.succs) {
+                    takeEdge(b, succ);
+                }
+            }
+        } else if (stm instanceof JUMP) {
+            for (final SSA.Block succ : b.succs) {
+                takeEdge(b, succ);
+            }
+        }
+    }
+
+    /**
+     * Queue edge between two blocks to be taken
+     * 
+     * @param from Predecessor
+     * @param to   Successor (null if outside of the fragment)
+     */
+    private void takeEdge(final SSA.Block from, final SSA.Block to) {
+        if (to != null) {
+            m_flowWork.add(new SSA.Block[] { from, to });
+        }
+    }
+
+    /**
+     * Evaluate expression
+     */
+    private Value eval(final Exp exp) {
+        if (exp instanceof CONST) {
+            return new Value(((CONST) exp).value);
+        } else if (exp instanceof TEMP) {
+            return getValue(((TEMP) exp).temp);
+        } else if (exp instanceof BINOP) {
+            final BINOP n = (BINOP) exp;
+            final Value left = eval(n.left);
+            final Value right = eval(n.right);
+
+            if (left == Value.VARYING || right == Value.VARYING) {
+                return Value.VARYING;
+            }
+
+            if (left == Value.UNKNOWN || right == Value.UNKNOWN) {
+                return Value.UNKNOWN;
+            }
+
+            final Integer value = fold(n.binop, left.constant, right.constant);
+            return value != null ? new Value(value) : Value.VARYING;
+        }
+
+        // Memory, calls, labels
+        return Value.VARYING;
+    }
+
+    /**
+     * Get value of a temp
+     */
+    private Value getValue(final NameOfTemp t) {
+        // Registers, and temps on their way into the fragment
+        if (!m_ssa.isVersion(t)) {
+            return Value.VARYING;
+        }
+
+        return m_values.getOrDefault(t, Value.UNKNOWN);
+    }
+
+    /**
+     * Set value of a version (its uses are re-evaluated if it changed)
+     */
+    private void setValue(final NameOfTemp t, final Value value) {
+        if (!getValue(t).same(value)) {
+            m_values.put(t, value);
+            m_ssaWork.add(t);
+        }
+    }
+
+    /**
+     * Record use of a version
+     */
+    private void addUse(final NameOfTemp t, final Use use) {
+        if (m_ssa.isVersion(t)) {
+            m_uses.computeIfAbsent(t, k -> new ArrayList<>()).add(use);
+        }
+    }
+
+    /**
+     * Replace constant versions by their values, branches with constant
+     * conditions by jumps, and delete blocks which were never reached
+     */
+    private void rewrite() {
+        final IRCopier copier = new IRCopier() {
+            @Override
+            Exp copy(final Exp exp) {
+                final Exp copy = super.copy(exp);
+
+                // Fold operations on constants (after their operands)
+                if (copy instanceof BINOP) {
+                    final BINOP n = (BINOP) copy;
+
+                    if (n.left instanceof CONST && n.right instanceof CONST) {
+                        final Integer value = fold(n.binop,
+                                ((CONST) n.left).value, ((CONST) n.right).value);
+
+                        if (value != null) {
+                            return new CONST(value);
+                        }
+                    }
+                }
+
+                return copy;
+            }
+
+            @Override
+            Exp temp(final TEMP n) {
+                final Value value = getValue(n.temp);
+
+                if (value.isConstant()) {
+                    m_numConstants++;
+                    return new CONST(value.constant);
+                }
+
+                return n;
+            }
+        };
+
+        for (final SSA.Block b : m_ssa.getBlocks()) {
+            if (!m_reached[b.index]) {
+                continue;
+            }
+
+            for (int i = 0; i < b.stms.size(); i++) {
+                final Stm stm = b.stms.get(i);
+                final TEMP dst = SSA.getAssigned(stm);
+
+                // Assignment of a constant version is replaced by the constant
+                if (dst != null) {
+                    final Value value = getValue(dst.temp);
+                    final Exp src = ((MOVE) stm).src;
+
+                    if (value.isConstant() && !(src instanceof CONST)) {
+                        m_numConstants++;
+                        b.stms.set(i, new MOVE(dst, new CONST(value.constant)));
+                        continue;
+                    }
+
+                    final Exp copy = copier.copy(src);
+                    b.stms.set(i, copy == src ? stm : new MOVE(dst, copy));
+                } else if (stm instanceof CJUMP) {
+                    final CJUMP n = (CJUMP) stm;
+                    final Value left = eval(n.left);
+                    final Value right = eval(n.right);
+
+                    if (left.isConstant() && right.isConstant()) {
+                        final NameOfLabel target = test(n.relop, left.constant, right.constant)
+                                ? n.iftrue
+                                : n.iffalse;
+
+                        Logger.logTraceLn(() -> String.format(
+                                "Replacing branch with constant condition: %s", n));
+                        m_numBranches++;
+
+                        b.stms.set(i, new JUMP(target));
+                    } else {
+                        b.stms.set(i, copier.copy(stm));
+                    }
+                } else {
+                    b.stms.set(i, copier.copy(stm));
+                }
+            }
+        }
+
+        m_ssa.getBlocks().removeIf(b -> !m_reached[b.index]);
+    }
+
+    /**
+     * Remove assignments to versions which are never used (without side
+     * effects). Versions which are only used by each other (like a phi in a
+     * loop header, and the phi at the end of the loop body) are removed too.
+     */
+    private void removeDeadCode() {
+        // Versions used by the remaining assignments, phis, and other statements
+        final HashSet<NameOfTemp> used = new HashSet<>();
+        // Operands of each assignment or phi, until its version is found to be used
+        final HashMap<NameOfTemp, List<NameOfTemp>> operands = new HashMap<>();
+        final ArrayDeque<NameOfTemp> work = new ArrayDeque<>();
+
+        for (final SSA.Block b : m_ssa.getBlocks()) {
+            for (final SSA.Phi phi : b.phis) {
+                operands.put(phi.dst, getTakenArgs(b, phi));
+            }
+
+            for (final Stm stm : b.stms) {
+                final TEMP dst = SSA.getAssigned(stm);
+
+                if (dst != null && isPure(((MOVE) stm).src)) {
+                    final List<NameOfTemp> ops = new ArrayList<>();
+                    SSA.forEachUse(stm, ops::add);
+                    operands.put(dst.temp, ops);
+                } else {
+                    SSA.forEachUse(stm, work::add);
+                }
+            }
+        }
+
+        // Anything used by a version which is used is used too
+        while (!work.isEmpty()) {
+            final NameOfTemp t = work.poll();
+
+            if (used.add(t)) {
+                work.addAll(operands.getOrDefault(t, new ArrayList<>()));
+            }
+        }
+
+        for (final SSA.Block b : m_ssa.getBlocks()) {
+            b.phis.removeIf(phi -> !used.contains(phi.dst));
+            b.stms.removeIf(stm -> {
+                final TEMP dst = SSA.getAssigned(stm);
+                return dst != null && operands.containsKey(dst.temp) && !used.contains(dst.temp);
+            });
+        }
+    }
+
+    /**
+     * Get the arguments of a phi which come from taken edges
+     */
+    private List<NameOfTemp> getTakenArgs(final SSA.Block b, final SSA.Phi phi) {
+        final List<NameOfTemp> args = new ArrayList<>();
+
+        for (int j = 0; j < phi.args.length; j++) {
+            if (m_taken[b.index][j]) {
+                args.add(phi.args[j]);
+            }
+        }
+
+        return args;
+    }
+
+    /**
+     * Check whether an expression has no side effects (and can't fault)
+     */
+    private static boolean isPure(final Exp exp) {
+        if (exp instanceof CONST || exp instanceof TEMP) {
+            return true;
+        }
+
+        if (exp instanceof BINOP) {
+            final BINOP n = (BINOP) exp;
+            return n.binop != BINOP.DIV && isPure(n.left) && isPure(n.right);
+        }
+
+        return false;
+    }
+
+    /**
+     * Fold operation on two constants
+     * 
+     * @return Result (null if it can't be folded)
+     */
+    private static Integer fold(final int binop, final int left, final int right) {
+        switch (binop) {
+            case BINOP.PLUS:
+                return left + right;
+            case BINOP.MINUS:
+                return left - right;
+            case BINOP.MUL:
+                return left * right;
+            case BINOP.AND:
+                return left & right;
+            case BINOP.OR:
+                return left | right;
+            case BINOP.XOR:
+                return left ^ right;
+            case BINOP.LSHIFT:
+                return left << right;
+            case BINOP.RSHIFT:
+                return left >>> right;
+            case BINOP.ARSHIFT:
+                return left >> right;
+            default:
+                // Division by zero must still happen at runtime
+                return null;
+        }
+    }
+
+    /**
+     * Evaluate branch condition on two constants
+     */
+    private static boolean test(final int relop, final int left, final int right) {
+        switch (relop) {
+            case CJUMP.EQ:
+                return left == right;
+            case CJUMP.NE:
+                return left != right;
+            case CJUMP.LT:
+                return left < right;
+            case CJUMP.GT:
+                return left > right;
+            case CJUMP.LE:
+                return left <= right;
+            case CJUMP.GE:
+                return left >= right;
+            case CJUMP.ULT:
+                return Integer.compareUnsigned(left, right) < 0;
+            case CJUMP.ULE:
+                return Integer.compareUnsigned(left, right) <= 0;
+            case CJUMP.UGT:
+                return Integer.compareUnsigned(left, right) > 0;
+            case CJUMP.UGE:
+                return Integer.compareUnsigned(left, right) >= 0;
+            default:
+                throw new IllegalArgumentException("Invalid relational operator");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package translate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tree.*;
+
+/**
+ * Copies IR trees (only the nodes which change).
+ * 
+ * Subclasses override call/temp/label to replace calls, temps or labels in
+ * the copy.
+ */
+class IRCopier {
+    /**
+     * Copy statement
+     */
+    Stm copy(final Stm stm) {
+        if (stm instanceof CJUMP) {
+            final CJUMP n = (CJUMP) stm;
+            final Exp left = copy(n.left);
+            final Exp right = copy(n.right);
+            final NameOfLabel iftrue = label(n.iftrue);
+            final NameOfLabel iffalse = label(n.iffalse);
+
+            return left == n.left && right == n.right && iftrue == n.iftrue && iffalse == n.iffalse
+                    ? n
+                    : new CJUMP(n.relop, left, right, iftrue, iffalse);
+        } else if (stm instanceof EVAL) {
+            final EVAL n = (EVAL) stm;
+            final Exp exp = copy(n.exp);
+
+            return exp == n.exp ? n : new EVAL(exp);
+        } else if (stm instanceof JUMP) {
+            final JUMP n = (JUMP) stm;
+            final Exp exp = copy(n.exp);
+            final List<NameOfLabel> targets = new ArrayList<>();
+            boolean changed = exp != n.exp;
+
+            for (final NameOfLabel target : n.targets) {
+                final NameOfLabel copy = label(target);
+                changed |= copy != target;
+                targets.add(copy);
+            }
+
+            return changed ? new JUMP(exp, targets) : n;
+        } else if (stm instanceof LABEL) {
+            final LABEL n = (LABEL) stm;
+            final NameOfLabel label = label(n.label);
+
+            return label == n.label ? n : new LABEL(label);
+        } else if (stm instanceof MOVE) {
+            final MOVE n = (MOVE) stm;
+            final Exp dst = copy(n.dst);
+            final Exp src = copy(n.src);
+
+            return dst == n.dst && src == n.src ? n : new MOVE(dst, src);
+        } else if (stm instanceof SEQ) {
+            final SEQ n = (SEQ) stm;
+            final Stm left = copy(n.left);
+            final Stm right = copy(n.right);
+
+            return left == n.left && right == n.right ? n : new SEQ(left, right);
+        }
+
+        // Nothing
+        return stm;
+    }
+
+    /**
+     * Copy expression
+     */
+    Exp copy(final Exp exp) {
+        if (exp instanceof BINOP) {
+            final BINOP n = (BINOP) exp;
+            final Exp left = copy(n.left);
+            final Exp right = copy(n.right);
+
+            return left == n.left && right == n.right
+                    ? n
+                    : new BINOP(n.binop, left, right);
+        } else if (exp instanceof CALL) {
+            return call((CALL) exp);
+        } else if (exp instanceof ESEQ) {
+            final ESEQ n = (ESEQ) exp;
+            final Stm stm = copy(n.stm);
+            final Exp value = copy(n.exp);
+
+            // ESEQ is deprecated in favor of RET (same meaning)
+            return stm == n.stm && value == n.exp ? n : new RET(stm, value);
+        } else if (exp instanceof NAME) {
+            final NAME n = (NAME) exp;
+            final NameOfLabel label = label(n.label);
+
+            return label == n.label ? n : new NAME(label);
+        } else if (exp instanceof MEM) {
+            final MEM n = (MEM) exp;
+            final Exp addr = copy(n.exp);
+
+            return addr == n.exp ? n : new MEM(addr);
+        } else if (exp instanceof RET) {
+            final RET n = (RET) exp;
+            final Stm stm = copy(n.stm);
+            final Exp value = copy(n.exp);
+
+            return stm == n.stm && value == n.exp ? n : new RET(stm, value);
+        } else if (exp instanceof TEMP) {
+            return temp((TEMP) exp);
+        } else if (exp instanceof RELOP) {
+            final RELOP n = (RELOP) exp;
+            final Exp lhs = copy(n.lhs);
+            final Exp rhs = copy(n.rhs);
+
+            return lhs == n.lhs && rhs == n.rhs ? n : new RELOP(n.oper, lhs, rhs);
+        }
+
+        // Constants (and nothing)
+        return exp;
+    }
+
+    /**
+     * Copy call
+     */
+    Exp call(final CALL n) {
+        final List<Exp> parts = n.subcomponents();
+        final Exp func = copy(parts.get(0));
+        final List<Exp> args = new ArrayList<>();
+        boolean changed = func != parts.get(0);
+
+        for (int i = 1; i < parts.size(); i++) {
+            final Exp arg = copy(parts.get(i));
+            changed |= arg != parts.get(i);
+            args.add(arg);
+        }
+
+        return changed ? new CALL(func, args) : n;
+    }
+
+    /**
+     * Copy temp
+     */
+    Exp temp(final TEMP n) {
+        return n;
+    }
+
+    /**
+     * Copy label (of a label declaration, jump or label reference)
+     */
+    NameOfLabel label(final NameOfLabel l) {
+        return l;
+    }
+}
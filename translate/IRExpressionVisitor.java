@@ -172,7 +172,7 @@ public final class IRExpressionVisitor implements SyntaxTreeVisitor<Exp> {
     public Exp visit(final Print n) {
         // Print argument
         final Exp arg = n.e.accept(new IRExpressionVisitor());
-        final Type type = n.e.accept(new SemanticsVisitor());
+        final Type type = check.Phase.getSymbolTable().getType(n.e);
 
         // Integer print uses runtime_print_integer
         if (type == Type.THE_INTEGER_TYPE) {
@@ -183,7 +183,7 @@ public final class IRExpressionVisitor implements SyntaxTreeVisitor<Exp> {
             return new CALL(new NAME("runtime_print_boolean"), arg);
         }
 
-        Logger.addError("Translate error: Bad print arg type: %s", type.getName());
+        Logger.addError("Translate error: Bad print arg type: %s", type != null ? type.getName() : "unknown");
         return null;
     }
 
@@ -408,7 +408,8 @@ public final class IRExpressionVisitor implements SyntaxTreeVisitor<Exp> {
         }
         // Callee is a nested call's return value
         else if (n.e instanceof Call) {
-            final Type nestedType = n.e.accept(new SemanticsVisitor());
+            // (type was found during the check phase)
+            final Type nestedType = check.Phase.getSymbolTable().getType(n.e);
             cls = ((IdentifierType) nestedType).nameOfType;
         }
         // Callee is some variable
@@ -455,6 +456,31 @@ public final class IRExpressionVisitor implements SyntaxTreeVisitor<Exp> {
         final String qualifiedName = Util.concatNames(cls, method);
         final ArrayList<Exp> args = new ArrayList<>();
 
+        // Some derived class overrides the method, so which one gets called
+        // depends on the object's vtable
+        if (cs.isOverridden(method)) {
+            final TEMP obj = Phase.getCurrTempMgr().create();
+            final Exp callee = n.e.accept(this);
+            final int slot = cs.getVtableSlot(method);
+
+            // Callee object (evaluated before the args)
+            args.add(obj);
+
+            // Call args
+            for (final Expression e : n.el) {
+                args.add(e.accept(this));
+            }
+
+            // Method address is in the vtable (first word of the object)
+            final Exp func = new MEM(new BINOP(BINOP.PLUS, new MEM(obj),
+                    new CONST(slot * Arch.get().getWordSize())));
+
+            return new RET(new MOVE(obj, callee), new CALL(func, args));
+        }
+
+        // Otherwise the method is known at compile time (class hierarchy
+        // analysis), and it is called directly
+
         // Callee object
         args.add(n.e.accept(this));
 
@@ -538,7 +564,17 @@ public final class IRExpressionVisitor implements SyntaxTreeVisitor<Exp> {
             return new CONST(0);
         }
 
-        return new CALL(new NAME("runtime_alloc_object"), new CONST(clsSize));
+        final Exp alloc = new CALL(new NAME("runtime_alloc_object"), new CONST(clsSize));
+
+        // Object header points to the class vtable
+        if (cls != null && cls.hasVtable()) {
+            final TEMP obj = Phase.getCurrTempMgr().create();
+
+            return new RET(new SEQ(new MOVE(obj, alloc),
+                    new MOVE(new MEM(obj), new NAME(cls.getVtableLabel()))), obj);
+        }
+
+        return alloc;
     }
 
     /**
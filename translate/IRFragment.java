@@ -25,8 +25,8 @@ public final class IRFragment {
     // Method which is represented by the fragment
     public final MethodSymbol mtd;
 
-    // IR fragment data
-    public final Stm stm;
+    // IR fragment data (replaced when calls are inlined, see Inliner)
+    public Stm stm;
     // IR fragment data (linearized)
     public List<Stm> linear;
 
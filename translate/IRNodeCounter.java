@@ -0,0 +1,255 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package translate;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import tree.*;
+
+/**
+ * Counts the nodes of an IR tree (for metrics)
+ */
+public final class IRNodeCounter extends IRTreeVisitor<Void> {
+    // Number of nodes visited
+    private long m_count = 0;
+
+    /**
+     * Count nodes of an IR tree
+     * 
+     * @param stm IR tree
+     */
+    public static long count(final Stm stm) {
+        final IRNodeCounter counter = new IRNodeCounter();
+        counter.visitChild(stm);
+        return counter.m_count;
+    }
+
+    /**
+     * Count nodes of an IR expression tree
+     * 
+     * @param exp IR tree
+     */
+    public static long count(final Exp exp) {
+        final IRNodeCounter counter = new IRNodeCounter();
+        counter.visitChild(exp);
+        return counter.m_count;
+    }
+
+    /**
+     * Count nodes of linearized IR
+     * 
+     * @param stms IR statements
+     */
+    public static long count(final List<Stm> stms) {
+        final IRNodeCounter counter = new IRNodeCounter();
+
+        for (final Stm stm : stms) {
+            counter.visitChild(stm);
+        }
+
+        return counter.m_count;
+    }
+
+    /**
+     * Visit child statement (if there is one)
+     */
+    private void visitChild(final Stm stm) {
+        if (stm != null) {
+            visit(stm);
+        }
+    }
+
+    /**
+     * Visit child expression (if there is one)
+     */
+    private void visitChild(final Exp exp) {
+        if (exp != null) {
+            visit(exp);
+        }
+    }
+
+    /**
+     * Visit binary operation
+     */
+    @Override
+    Void visit(final BINOP n) {
+        m_count++;
+        visitChild(n.left);
+        visitChild(n.right);
+        return null;
+    }
+
+    /**
+     * Visit method call
+     */
+    @Override
+    Void visit(final CALL n) {
+        m_count++;
+        visitChild(n.func);
+
+        for (ExpList arg = n.args; arg != null; arg = arg.tail) {
+            visitChild(arg.head);
+        }
+
+        return null;
+    }
+
+    /**
+     * Visit conditional jump
+     */
+    @Override
+    Void visit(final CJUMP n) {
+        m_count++;
+        visitChild(n.left);
+        visitChild(n.right);
+        return null;
+    }
+
+    /**
+     * Visit constant literal
+     */
+    @Override
+    Void visit(final CONST n) {
+        m_count++;
+        return null;
+    }
+
+    /**
+     * Visit expression sequence
+     */
+    @Override
+    Void visit(final ESEQ n) {
+        m_count++;
+        visitChild(n.stm);
+        visitChild(n.exp);
+        return null;
+    }
+
+    /**
+     * Visit expression evaluation
+     */
+    @Override
+    Void visit(final EVAL n) {
+        m_count++;
+        visitChild(n.exp);
+        return null;
+    }
+
+    /**
+     * Visit unconditional jump
+     */
+    @Override
+    Void visit(final JUMP n) {
+        m_count++;
+        visitChild(n.exp);
+        return null;
+    }
+
+    /**
+     * Visit label declaration
+     */
+    @Override
+    Void visit(final LABEL n) {
+        m_count++;
+        return null;
+    }
+
+    /**
+     * Visit memory reference
+     */
+    @Override
+    Void visit(final MEM n) {
+        m_count++;
+        visitChild(n.exp);
+        return null;
+    }
+
+    /**
+     * Visit data move
+     */
+    @Override
+    Void visit(final MOVE n) {
+        m_count++;
+        visitChild(n.dst);
+        visitChild(n.src);
+        return null;
+    }
+
+    /**
+     * Visit label reference
+     */
+    @Override
+    Void visit(final NAME n) {
+        m_count++;
+        return null;
+    }
+
+    /**
+     * Visit "ESEQ" alias
+     */
+    @Override
+    Void visit(final RET n) {
+        m_count++;
+        visitChild(n.stm);
+        visitChild(n.exp);
+        return null;
+    }
+
+    /**
+     * Visit statement sequence.
+     * A method body is one long chain of sequences (one per statement), so
+     * they are walked with a stack instead of recursing down the chain.
+     */
+    @Override
+    Void visit(final SEQ n) {
+        final ArrayDeque<Stm> stack = new ArrayDeque<>();
+        stack.push(n);
+
+        while (!stack.isEmpty()) {
+            final Stm stm = stack.pop();
+
+            if (stm instanceof SEQ) {
+                m_count++;
+
+                // Left side is visited first
+                if (((SEQ) stm).right != null) {
+                    stack.push(((SEQ) stm).right);
+                }
+
+                if (((SEQ) stm).left != null) {
+                    stack.push(((SEQ) stm).left);
+                }
+            } else {
+                visitChild(stm);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Visit machine temporary
+     */
+    @Override
+    Void visit(final TEMP n) {
+        m_count++;
+        return null;
+    }
+
+    /**
+     * Visit relational operation (see translate.RELOP)
+     */
+    @Override
+    Void visit(final RELOP n) {
+        m_count++;
+        visitChild(n.lhs);
+        visitChild(n.rhs);
+        return null;
+    }
+}
@@ -48,7 +48,7 @@ public final class IRProgramVisitor implements SyntaxTreeVisitor<Void> {
         // Dress fragment
         frag = TranslateUtil.dressFragment(frag, n.nameOfMainClass.s, "main");
         // Save fragment
-        translate.Phase.getFragments().add(new IRFragment(frag, true));
+        translate.Phase.addFragment(new IRFragment(frag, true));
 
         // Exit scopes
         check.Phase.getSymbolTable().exitScope();
@@ -73,7 +73,7 @@ public final class IRProgramVisitor implements SyntaxTreeVisitor<Void> {
             final Stm frag = mtd.accept(new IRMethodVisitor());
 
             check.Phase.getSymbolTable().enterScope(mtd.i.s);
-            Phase.getFragments().add(new IRFragment(frag, false));
+            Phase.addFragment(new IRFragment(frag, false));
             check.Phase.getSymbolTable().exitScope();
         }
 
@@ -99,7 +99,7 @@ public final class IRProgramVisitor implements SyntaxTreeVisitor<Void> {
             final Stm frag = mtd.accept(new IRMethodVisitor());
 
             check.Phase.getSymbolTable().enterScope(mtd.i.s);
-            Phase.getFragments().add(new IRFragment(frag, false));
+            Phase.addFragment(new IRFragment(frag, false));
             check.Phase.getSymbolTable().exitScope();
         }
 
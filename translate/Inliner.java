@@ -0,0 +1,324 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package translate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import main.Arch;
+import main.Config;
+import main.Logger;
+import main.Metrics;
+
+import tree.*;
+
+/**
+ * Method inliner (IR trees, before canonicalization)
+ * 
+ * Calls to small methods are replaced by a copy of the method's body, so the
+ * caller doesn't pay for the register window shift (save/restore) and the
+ * argument moves. The copy runs on fresh temps from the caller's temp manager.
+ * 
+ * Only methods whose body is straight-line code without any calls (getters,
+ * setters, etc.) can be inlined. Their locals are temps like any other. Calls
+ * through a vtable (see IRExpressionVisitor.visit(Call)) are never inlined,
+ * since the callee isn't known until runtime.
+ * 
+ * Every fragment has to be scanned before any is inlined, since the decision
+ * depends on the size of the method and on how many call sites it has.
+ */
+public final class Inliner {
+    /**
+     * Method which may be inlined
+     */
+    private static final class Candidate {
+        // Method fragment
+        final IRFragment frag;
+        // Method body (without prologue/epilogue, or the return)
+        final List<Stm> body;
+        // Method return value
+        final Exp result;
+        // Formal registers (including "this") which the body writes to
+        final HashSet<NameOfTemp> written = new HashSet<>();
+        // Number of IR nodes in the body and return value
+        int size = 0;
+
+        public Candidate(final IRFragment frag, final List<Stm> body, final Exp result) {
+            this.frag = frag;
+            this.body = body;
+            this.result = result;
+        }
+    }
+
+    // Maximum growth of the program from inlining one method
+    // (multiple of the method size budget, see Config.getInlineBudget)
+    private static final int sc_maxGrowth = 16;
+
+    // Methods which may be inlined, by label
+    private final HashMap<String, Candidate> m_candidates = new HashMap<>();
+    // Number of direct call sites of each method, by label
+    private final HashMap<String, Integer> m_callSites = new HashMap<>();
+
+    /**
+     * Clear all candidates and call sites
+     */
+    public void reset() {
+        m_candidates.clear();
+        m_callSites.clear();
+    }
+
+    /**
+     * Scan IR fragment for call sites, and remember it if it may be inlined
+     * 
+     * @param frag IR fragment (tree form)
+     */
+    public void scan(final IRFragment frag) {
+        countCallSites(frag.stm);
+
+        // Main function is never called
+        if (frag.isEntry) {
+            return;
+        }
+
+        /**
+         * Fragment is dressed with the prologue label and epilogue jump, and
+         * the body ends by moving the return value (see IRMethodVisitor)
+         */
+        final List<Stm> stms = new ArrayList<>();
+        flatten(frag.stm, stms);
+
+        if (stms.size() < 3 || !(stms.get(0) instanceof LABEL)
+                || !(stms.get(stms.size() - 1) instanceof JUMP)
+                || !(stms.get(stms.size() - 2) instanceof MOVE)) {
+            return;
+        }
+
+        final MOVE ret = (MOVE) stms.get(stms.size() - 2);
+        if (!(ret.dst instanceof TEMP) || !((TEMP) ret.dst).temp.equals(
+                ((TEMP) Arch.get().getReturnAccessAsCallee()).temp)) {
+            return;
+        }
+
+        final Candidate cand = new Candidate(frag,
+                new ArrayList<>(stms.subList(1, stms.size() - 2)), ret.src);
+
+        // Formal registers (add 1 for the implicit "this" pointer)
+        final HashSet<NameOfTemp> formals = new HashSet<>();
+        for (int i = 0; i < frag.mtd.formals.size() + 1; i++) {
+            formals.add(((TEMP) Arch.get().getFormalAccessAsCallee(i)).temp);
+        }
+
+        for (final Stm stm : cand.body) {
+            if (!inspect(stm, cand, formals)) {
+                return;
+            }
+        }
+
+        if (!inspect(cand.result, cand, formals)) {
+            return;
+        }
+
+        cand.size = (int) (IRNodeCounter.count(cand.body) + IRNodeCounter.count(cand.result));
+        m_candidates.put(frag.getName(), cand);
+    }
+
+    /**
+     * Replace calls to inlined methods in an IR fragment (see scan)
+     * 
+     * @param frag IR fragment (tree form)
+     */
+    public void inline(final IRFragment frag) {
+        if (Config.getInlineBudget() <= 0) {
+            return;
+        }
+
+        Metrics.begin("Inline");
+
+        final int[] numInlined = { 0 };
+        frag.stm = new IRCopier() {
+            @Override
+            Exp call(final CALL n) {
+                final CALL copy = (CALL) super.call(n);
+                final Candidate cand = getInlined(copy);
+
+                if (cand == null) {
+                    return copy;
+                }
+
+                Logger.logVerboseLn("Inlining %s into %s", cand.frag.getName(), frag.getName());
+                numInlined[0]++;
+
+                return expand(cand, copy, frag.tempMgr);
+            }
+        }.copy(frag.stm);
+
+        Metrics.count("calls", numInlined[0]);
+        Metrics.end(frag.getName());
+    }
+
+    /**
+     * Get method to inline in place of a call
+     * 
+     * @param n Call
+     * @return Inlined method (null if the call stays)
+     */
+    private Candidate getInlined(final CALL n) {
+        if (!(n.func instanceof NAME)) {
+            return null;
+        }
+
+        final String name = ((NAME) n.func).label.toString();
+        final Candidate cand = m_candidates.get(name);
+        final int budget = Config.getInlineBudget();
+
+        if (cand == null || cand.size > budget
+                || cand.size * m_callSites.getOrDefault(name, 1) > budget * sc_maxGrowth) {
+            return null;
+        }
+
+        // Should never happen (the call was checked), but don't make it worse
+        final List<Exp> args = n.subcomponents();
+        if (args.size() - 1 != cand.frag.mtd.formals.size() + 1) {
+            return null;
+        }
+
+        return cand;
+    }
+
+    /**
+     * Build a copy of an inlined method's body, in place of a call to it
+     * 
+     * @param cand    Inlined method
+     * @param n       Call
+     * @param tempMgr Caller's temp manager
+     * @return Method return value (after the body)
+     */
+    private static Exp expand(final Candidate cand, final CALL n, final TempManager tempMgr) {
+        // Value of each of the method's temps/formals
+        final HashMap<NameOfTemp, Exp> subst = new HashMap<>();
+        final List<Stm> stms = new ArrayList<>();
+
+        // Arguments (and "this" pointer) are evaluated in order, before the body
+        final List<Exp> args = n.subcomponents();
+        for (int i = 1; i < args.size(); i++) {
+            final NameOfTemp formal = ((TEMP) Arch.get().getFormalAccessAsCallee(i - 1)).temp;
+            final Exp arg = args.get(i);
+
+            // Variables/constants can be used directly, if the formal is never
+            // assigned (expressions never change the caller's variables)
+            if ((arg instanceof CONST || arg instanceof TEMP) && !cand.written.contains(formal)) {
+                subst.put(formal, arg);
+            } else {
+                final TEMP t = tempMgr.create();
+                stms.add(new MOVE(t, arg));
+                subst.put(formal, t);
+            }
+        }
+
+        final IRCopier copier = new IRCopier() {
+            @Override
+            Exp temp(final TEMP n) {
+                // Method's own temps get fresh caller temps
+                return subst.computeIfAbsent(n.temp, k -> tempMgr.create());
+            }
+        };
+
+        for (final Stm stm : cand.body) {
+            stms.add(copier.copy(stm));
+        }
+
+        final Exp result = copier.copy(cand.result);
+
+        if (stms.isEmpty()) {
+            return result;
+        }
+
+        return new RET(TranslateUtil.joinFragments(stms.toArray(new Stm[stms.size()])), result);
+    }
+
+    /**
+     * Count direct call sites in an IR tree
+     * 
+     * @param stm IR tree
+     */
+    private void countCallSites(final Stm stm) {
+        new IRCopier() {
+            @Override
+            Exp call(final CALL n) {
+                if (n.func instanceof NAME) {
+                    m_callSites.merge(((NAME) n.func).label.toString(), 1, Integer::sum);
+                }
+
+                return super.call(n);
+            }
+        }.copy(stm);
+    }
+
+    /**
+     * Flatten statement sequence into a list of statements
+     * 
+     * @param stm  IR tree
+     * @param stms (Output) Statements
+     */
+    private static void flatten(final Stm stm, final List<Stm> stms) {
+        if (stm instanceof SEQ) {
+            flatten(((SEQ) stm).left, stms);
+            flatten(((SEQ) stm).right, stms);
+        } else if (stm != null) {
+            stms.add(stm);
+        }
+    }
+
+    /**
+     * Check whether an IR tree can be part of an inlined method
+     * (straight-line code, without any calls, only using its own temps)
+     * 
+     * @param node    IR tree (statement or expression)
+     * @param cand    Method being checked (written formals are added)
+     * @param formals Formal registers of the method
+     */
+    private static boolean inspect(final Object node, final Candidate cand,
+            final HashSet<NameOfTemp> formals) {
+        if (node instanceof BINOP) {
+            final BINOP n = (BINOP) node;
+            return inspect(n.left, cand, formals) && inspect(n.right, cand, formals);
+        } else if (node instanceof CONST) {
+            return true;
+        } else if (node instanceof MEM) {
+            return inspect(((MEM) node).exp, cand, formals);
+        } else if (node instanceof TEMP) {
+            final NameOfTemp t = ((TEMP) node).temp;
+            return formals.contains(t) || cand.frag.tempMgr.isChild(t);
+        } else if (node instanceof RET) {
+            final RET n = (RET) node;
+            return inspect(n.stm, cand, formals) && inspect(n.exp, cand, formals);
+        } else if (node instanceof ESEQ) {
+            final ESEQ n = (ESEQ) node;
+            return inspect(n.stm, cand, formals) && inspect(n.exp, cand, formals);
+        } else if (node instanceof EVAL) {
+            return inspect(((EVAL) node).exp, cand, formals);
+        } else if (node instanceof SEQ) {
+            final SEQ n = (SEQ) node;
+            return inspect(n.left, cand, formals) && inspect(n.right, cand, formals);
+        } else if (node instanceof MOVE) {
+            final MOVE n = (MOVE) node;
+
+            // Assigned formals can't be replaced by the caller's arguments
+            if (n.dst instanceof TEMP && formals.contains(((TEMP) n.dst).temp)) {
+                cand.written.add(((TEMP) n.dst).temp);
+            }
+
+            return inspect(n.dst, cand, formals) && inspect(n.src, cand, formals);
+        }
+
+        // Calls, labels, jumps, etc.
+        return false;
+    }
+}
@@ -8,7 +8,6 @@
 package translate;
 
 import tree.*;
-import main.Logger;
 import main.Util;
 
 /**
@@ -24,11 +23,9 @@ public final class LabelManager {
      * @param args Prefix tokens
      */
     public LABEL create(final String... args) {
-        if (m_numLabel > 9999) {
-            Logger.addError("Common error: Ran out of unique labels (>9999)");
-        }
-
-        // Create unique identifier
+        // Create unique identifier.
+        // Numbers past 9999 just get more digits. They are still unique, since
+        // no prefix ends with a digit.
         final int no = m_numLabel++;
         final String name = String.format("%s%04d",
                 Util.concatNames(args), no);
@@ -8,8 +8,12 @@
 package translate;
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
+import main.CompilationContext;
+import main.Config;
 import main.Logger;
+import main.Metrics;
 
 import assem.*;
 import tree.*;
@@ -18,45 +22,59 @@ import tree.*;
  * Wrapper for "translate phase" of compiler
  */
 public final class Phase {
-    // Program IR fragments
-    private static final ArrayList<IRFragment> s_fragments = new ArrayList<>();
-
-    // Currently processing method's label manager
-    private static final LabelManager s_labelMgr = new LabelManager();
-    // Currently processing method's temp manager
-    private static TempManager s_currTempMgr;
-
     /**
      * Clear phase state, in case the phase is being ran again
      */
-    private static void initialize() {
+    private static void initialize(final CompilationContext ctx) {
         Logger.registerPhase("Translate");
-        check.Phase.getSymbolTable().resetScope();
-        s_fragments.clear();
-
-        resetForFunction();
+        ctx.getSymbolTable().resetScope();
+        ctx.getIRFragments().clear();
+        ctx.getLabelMgr().reset();
+        ctx.getInliner().reset();
+        ctx.setCurrTempMgr(new TempManager());
     }
 
     /**
      * Perform translate phase of compiler.
      * Translate program AST into IR
      * 
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute() {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
-        initialize();
+        initialize(ctx);
 
         /**
          * Tree-form IR
          */
 
+        // When streaming, fragments are passed on as soon as they are
+        // translated, so the program is translated once beforehand just to
+        // find the methods to inline
+        final Consumer<IRFragment> sink = ctx.getIRFragmentSink();
+        if (sink != null && Config.getInlineBudget() > 0) {
+            ctx.setIRFragmentSink(ctx.getInliner()::scan);
+            ctx.getAstRoot().accept(new IRProgramVisitor());
+            ctx.setIRFragmentSink(sink);
+
+            if (Logger.isError()) {
+                return false;
+            }
+
+            // Names must be the same as if there was only one translation
+            ctx.getSymbolTable().resetScope();
+            ctx.getLabelMgr().reset();
+        }
+
         // Generate program IR
-        parse.Phase.getAstRoot().accept(new IRProgramVisitor());
+        ctx.getAstRoot().accept(new IRProgramVisitor());
 
         // Pretty-print IR (verbose output)
-        for (final IRFragment frag : s_fragments) {
-            Logger.logVerboseLn("%s", frag);
+        if (Config.isVerbose()) {
+            for (final IRFragment frag : ctx.getIRFragments()) {
+                Logger.logVerboseLn(frag::toString);
+            }
         }
 
         // Error during translation to IR
@@ -64,42 +82,110 @@ public final class Phase {
             return false;
         }
 
+        // Inline small methods (every fragment must be scanned first)
+        if (Config.getInlineBudget() > 0) {
+            for (final IRFragment frag : ctx.getIRFragments()) {
+                ctx.getInliner().scan(frag);
+            }
+
+            for (final IRFragment frag : ctx.getIRFragments()) {
+                inline(ctx, frag);
+            }
+        }
+
         /**
          * Linear IR
          */
 
         // Canonicalize/linearize program IR
-        for (final IRFragment frag : s_fragments) {
-            frag.linear = canon.Main.transform(frag.stm);
+        for (final IRFragment frag : ctx.getIRFragments()) {
+            linearize(ctx, frag);
+            propagate(ctx, frag);
         }
 
         // Pretty-print linearized IR (verbose output)
-        for (final IRFragment frag : s_fragments) {
-            Logger.logVerboseLn("%s", frag);
+        if (Config.isVerbose()) {
+            for (final IRFragment frag : ctx.getIRFragments()) {
+                Logger.logVerboseLn(frag::toString);
+            }
         }
 
         return true;
     }
 
     /**
-     * Access program IR fragments
+     * Inline small methods into IR fragment (see Inliner)
+     * 
+     * @param ctx  Compilation context
+     * @param frag IR fragment
+     */
+    public static void inline(final CompilationContext ctx, final IRFragment frag) {
+        ctx.getInliner().inline(frag);
+    }
+
+    /**
+     * Canonicalize/linearize IR fragment
+     * 
+     * @param ctx  Compilation context
+     * @param frag IR fragment
+     */
+    public static void linearize(final CompilationContext ctx, final IRFragment frag) {
+        Metrics.begin("Canonicalize");
+
+        frag.linear = ctx.getCanonicalizer().transform(frag.stm);
+
+        if (Config.isMetrics()) {
+            Metrics.count("statements", frag.linear.size());
+            Metrics.count("irNodes", IRNodeCounter.count(frag.linear));
+        }
+        Metrics.end(frag.getName());
+    }
+
+    /**
+     * Propagate constants through linearized IR fragment (see ConstantPropagator)
+     * 
+     * @param ctx  Compilation context
+     * @param frag IR fragment
+     */
+    public static void propagate(final CompilationContext ctx, final IRFragment frag) {
+        if (Config.isConstProp()) {
+            ConstantPropagator.propagate(frag, ctx.getCanonicalizer());
+        }
+    }
+
+    /**
+     * Add translated IR fragment to the current compilation
+     */
+    public static void addFragment(final IRFragment frag) {
+        // Translation of the function is measured from resetForFunction
+        if (Config.isMetrics()) {
+            Metrics.count("irNodes", IRNodeCounter.count(frag.stm));
+            Metrics.count("temps", frag.tempMgr.size());
+        }
+        Metrics.end(frag.getName());
+
+        CompilationContext.current().addIRFragment(frag);
+    }
+
+    /**
+     * Access program IR fragments of the current compilation
      */
     public static ArrayList<IRFragment> getFragments() {
-        return s_fragments;
+        return CompilationContext.current().getIRFragments();
     }
 
     /**
      * Access current label manager
      */
     public static LabelManager getLabelMgr() {
-        return s_labelMgr;
+        return CompilationContext.current().getLabelMgr();
     }
 
     /**
      * Access current temp manager
      */
     public static TempManager getCurrTempMgr() {
-        return s_currTempMgr;
+        return CompilationContext.current().getCurrTempMgr();
     }
 
     /**
@@ -108,6 +194,9 @@ public final class Phase {
     public static void resetForFunction() {
         // Don't make new label manager too, all functions share the same set
         // to avoid name collision
-        s_currTempMgr = new TempManager();
+        CompilationContext.current().setCurrTempMgr(new TempManager());
+
+        // Measure translation of the function (see addFragment)
+        Metrics.begin("Translate");
     }
 }
@@ -0,0 +1,560 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package translate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import main.Arch;
+import main.Util;
+
+import tree.*;
+
+/**
+ * Static single assignment (SSA) form of a linearized IR fragment
+ * 
+ * The linear IR is split into basic blocks (see Canonicalizer.makeBlocks), and
+ * every assignment to a temp defines a new "version" of it. Where versions of
+ * a temp meet, a phi function picks the version from whichever predecessor
+ * block was run. Phis are placed on the iterated dominance frontier of the
+ * blocks assigning the temp, and only for temps which are used in a block
+ * before being assigned there (semi-pruned SSA). Registers are left alone.
+ * 
+ * Converting back out of SSA (see toLinear) drops the phis and gives every
+ * version its temp's name back. That is only correct as long as no two
+ * versions of a temp are live at the same time, which holds right after
+ * construction. Passes which only replace uses with constants, or delete
+ * code, keep it that way (copy propagation would not).
+ */
+public final class SSA {
+    /**
+     * Phi function (at the start of a block)
+     */
+    public static final class Phi {
+        // Temp which is being merged
+        public final NameOfTemp temp;
+        // Version defined by the phi
+        public NameOfTemp dst;
+        // Version coming from each predecessor (same order as Block.preds)
+        public final NameOfTemp[] args;
+
+        /**
+         * Constructor
+         * 
+         * @param temp     Temp which is being merged
+         * @param numPreds Number of predecessor blocks
+         */
+        private Phi(final NameOfTemp temp, final int numPreds) {
+            this.temp = temp;
+            this.dst = temp;
+            this.args = new NameOfTemp[numPreds];
+            Arrays.fill(this.args, temp);
+        }
+
+        /**
+         * Convert phi to string form
+         */
+        @Override
+        public String toString() {
+            return String.format("PHI(%s <- %s)", dst, Arrays.toString(args));
+        }
+    }
+
+    /**
+     * Basic block
+     */
+    public static final class Block {
+        // Index into the fragment's blocks
+        public int index;
+        // Statements (the first is a label, and the last is a jump)
+        public final List<Stm> stms;
+        // Phi functions (run before the statements)
+        public final List<Phi> phis = new ArrayList<>();
+        // Predecessor blocks
+        public final List<Block> preds = new ArrayList<>();
+        // Successor blocks (in the fragment)
+        public final List<Block> succs = new ArrayList<>();
+
+        // Immediate dominator (null for the entry block)
+        private Block m_idom = null;
+        // Blocks immediately dominated by this one
+        private final List<Block> m_children = new ArrayList<>();
+        // Dominance frontier
+        private final LinkedHashSet<Block> m_frontier = new LinkedHashSet<>();
+        // Reverse postorder number (-1 if unreachable)
+        private int m_order = -1;
+
+        /**
+         * Constructor
+         * 
+         * @param index Index into the fragment's blocks
+         * @param stms  Statements
+         */
+        private Block(final int index, final List<Stm> stms) {
+            this.index = index;
+            this.stms = new ArrayList<>(stms);
+        }
+
+        /**
+         * Get label which begins the block
+         */
+        public NameOfLabel getLabel() {
+            return ((LABEL) stms.get(0)).label;
+        }
+
+        /**
+         * Get jump which ends the block
+         */
+        public Stm getJump() {
+            return stms.get(stms.size() - 1);
+        }
+    }
+
+    // Blocks reachable from the entry (in code order, entry first)
+    private final List<Block> m_blocks = new ArrayList<>();
+    // Block beginning with each label
+    private final HashMap<NameOfLabel, Block> m_labels = new HashMap<>();
+    // Temp of each version
+    private final HashMap<NameOfTemp, NameOfTemp> m_versions = new HashMap<>();
+    // Number of versions of each temp
+    private final HashMap<NameOfTemp, Integer> m_numVersions = new HashMap<>();
+
+    /**
+     * Build SSA form
+     * 
+     * @param blocks Basic blocks of the fragment (entry first)
+     */
+    public SSA(final List<List<Stm>> blocks) {
+        final List<Block> all = new ArrayList<>();
+        for (final List<Stm> stms : blocks) {
+            final Block b = new Block(all.size(), stms);
+            m_labels.put(b.getLabel(), b);
+            all.add(b);
+        }
+
+        // Control flow edges (jumps out of the fragment go nowhere)
+        for (final Block b : all) {
+            for (final NameOfLabel target : getTargets(b.getJump())) {
+                final Block succ = m_labels.get(target);
+
+                if (succ != null && !b.succs.contains(succ)) {
+                    b.succs.add(succ);
+                }
+            }
+        }
+
+        // Unreachable blocks can't affect anything
+        final List<Block> order = orderBlocks(all.get(0));
+        for (final Block b : all) {
+            if (b.m_order == -1) {
+                m_labels.remove(b.getLabel());
+                continue;
+            }
+
+            b.index = m_blocks.size();
+            m_blocks.add(b);
+
+            for (final Block succ : b.succs) {
+                succ.preds.add(b);
+            }
+        }
+
+        computeDominators(order);
+        placePhis();
+        rename(m_blocks.get(0), new HashMap<>());
+    }
+
+    /**
+     * Access the blocks (in code order, entry first)
+     */
+    public List<Block> getBlocks() {
+        return m_blocks;
+    }
+
+    /**
+     * Get block beginning with a label
+     * 
+     * @return Block (null if the label is outside of the fragment)
+     */
+    public Block getBlock(final NameOfLabel label) {
+        return m_labels.get(label);
+    }
+
+    /**
+     * Check whether a temp is a version defined in SSA form.
+     * Temps which are used before they are assigned (registers, or temps on
+     * their way in to the entry block) are not.
+     */
+    public boolean isVersion(final NameOfTemp t) {
+        return m_versions.containsKey(t);
+    }
+
+    /**
+     * Convert back out of SSA form (see class description)
+     * 
+     * @return Linearized IR
+     */
+    public List<Stm> toLinear() {
+        final IRCopier copier = new IRCopier() {
+            @Override
+            Exp temp(final TEMP n) {
+                final NameOfTemp t = m_versions.get(n.temp);
+                return t != null ? new TEMP(t) : n;
+            }
+        };
+
+        final List<Stm> linear = new ArrayList<>();
+        for (final Block b : m_blocks) {
+            for (final Stm stm : b.stms) {
+                linear.add(copier.copy(stm));
+            }
+        }
+
+        return linear;
+    }
+
+    /**
+     * Get labels which a jump may go to
+     * 
+     * @param jump Last statement of a block
+     */
+    public static List<NameOfLabel> getTargets(final Stm jump) {
+        if (jump instanceof JUMP) {
+            return ((JUMP) jump).targets;
+        }
+
+        if (jump instanceof CJUMP) {
+            final CJUMP n = (CJUMP) jump;
+            return Util.makeList(n.iftrue, n.iffalse);
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Visit the temps used by a statement (the temp assigned by a MOVE is not
+     * a use)
+     * 
+     * @param stm     Statement
+     * @param visitor Called for each use
+     */
+    public static void forEachUse(final Stm stm, final Consumer<NameOfTemp> visitor) {
+        final IRCopier copier = new IRCopier() {
+            @Override
+            Exp temp(final TEMP n) {
+                visitor.accept(n.temp);
+                return n;
+            }
+        };
+
+        if (stm instanceof MOVE && ((MOVE) stm).dst instanceof TEMP) {
+            copier.copy(((MOVE) stm).src);
+        } else {
+            copier.copy(stm);
+        }
+    }
+
+    /**
+     * Get the temp assigned by a statement, if it is one which SSA form renames
+     * 
+     * @return Assigned temp (null if there is none)
+     */
+    public static TEMP getAssigned(final Stm stm) {
+        if (!(stm instanceof MOVE) || !(((MOVE) stm).dst instanceof TEMP)) {
+            return null;
+        }
+
+        final TEMP dst = (TEMP) ((MOVE) stm).dst;
+        return isRenamed(dst) ? dst : null;
+    }
+
+    /**
+     * Check whether SSA form renames a temp (registers are left alone)
+     */
+    private static boolean isRenamed(final TEMP t) {
+        return !Arch.get().tempIsRegister(t)
+                && !t.temp.equals(((TEMP) Arch.get().getFrameAccess()).temp);
+    }
+
+    /**
+     * Number the blocks reachable from the entry in reverse postorder
+     * 
+     * @param entry Entry block
+     * @return Reachable blocks (in reverse postorder)
+     */
+    private static List<Block> orderBlocks(final Block entry) {
+        final List<Block> postorder = new ArrayList<>();
+
+        // Depth-first search, keeping the next successor to visit for each block
+        final ArrayDeque<Block> stack = new ArrayDeque<>();
+        final HashMap<Block, Integer> next = new HashMap<>();
+        stack.push(entry);
+        next.put(entry, 0);
+
+        while (!stack.isEmpty()) {
+            final Block b = stack.peek();
+            final int i = next.get(b);
+
+            if (i < b.succs.size()) {
+                next.put(b, i + 1);
+
+                final Block succ = b.succs.get(i);
+                if (!next.containsKey(succ)) {
+                    next.put(succ, 0);
+                    stack.push(succ);
+                }
+            } else {
+                stack.pop();
+                postorder.add(b);
+            }
+        }
+
+        final List<Block> order = new ArrayList<>();
+        for (int i = postorder.size() - 1; i >= 0; i--) {
+            postorder.get(i).m_order = order.size();
+            order.add(postorder.get(i));
+        }
+
+        return order;
+    }
+
+    /**
+     * Find the dominator tree and dominance frontiers.
+     * Dominators are found with the iterative algorithm by Cooper, Harvey and
+     * Kennedy ("A Simple, Fast Dominance Algorithm").
+     * 
+     * @param order Reachable blocks (in reverse postorder)
+     */
+    private static void computeDominators(final List<Block> order) {
+        final Block entry = order.get(0);
+        entry.m_idom = entry;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (final Block b : order.subList(1, order.size())) {
+                Block idom = null;
+
+                // Intersect the dominators of the processed predecessors
+                for (final Block pred : b.preds) {
+                    if (pred.m_idom == null) {
+                        continue;
+                    }
+
+                    idom = idom == null ? pred : intersect(pred, idom);
+                }
+
+                if (idom != b.m_idom) {
+                    b.m_idom = idom;
+                    changed = true;
+                }
+            }
+        }
+
+        entry.m_idom = null;
+        for (final Block b : order.subList(1, order.size())) {
+            b.m_idom.m_children.add(b);
+        }
+
+        // Dominance frontiers are found by walking up from each join point
+        for (final Block b : order) {
+            if (b.preds.size() < 2) {
+                continue;
+            }
+
+            for (final Block pred : b.preds) {
+                for (Block runner = pred; runner != null && runner != b.m_idom; runner = runner.m_idom) {
+                    runner.m_frontier.add(b);
+                }
+            }
+        }
+
+        // Children are visited in code order when renaming
+        for (final Block b : order) {
+            b.m_children.sort((x, y) -> Integer.compare(x.index, y.index));
+        }
+    }
+
+    /**
+     * Find the nearest common dominator of two blocks (while the dominators
+     * are being computed)
+     */
+    private static Block intersect(Block x, Block y) {
+        while (x != y) {
+            while (x.m_order > y.m_order) {
+                x = x.m_idom;
+            }
+
+            while (y.m_order > x.m_order) {
+                y = y.m_idom;
+            }
+        }
+
+        return x;
+    }
+
+    /**
+     * Place phi functions for every temp which is used in a block before
+     * being assigned there (on the iterated dominance frontier of its
+     * assignments)
+     */
+    private void placePhis() {
+        // Blocks assigning each temp
+        final LinkedHashMap<NameOfTemp, LinkedHashSet<Block>> assigned = new LinkedHashMap<>();
+        // Temps which may be live on the way into some block
+        final LinkedHashSet<NameOfTemp> live = new LinkedHashSet<>();
+
+        for (final Block b : m_blocks) {
+            final HashMap<NameOfTemp, Boolean> killed = new HashMap<>();
+
+            for (final Stm stm : b.stms) {
+                forEachUse(stm, t -> {
+                    if (!killed.containsKey(t)) {
+                        live.add(t);
+                    }
+                });
+
+                final TEMP dst = getAssigned(stm);
+                if (dst != null) {
+                    killed.put(dst.temp, true);
+                    assigned.computeIfAbsent(dst.temp, k -> new LinkedHashSet<>()).add(b);
+                }
+            }
+        }
+
+        for (final NameOfTemp t : assigned.keySet()) {
+            if (!live.contains(t)) {
+                continue;
+            }
+
+            // Blocks which already have a phi for the temp
+            final LinkedHashSet<Block> hasPhi = new LinkedHashSet<>();
+            final ArrayDeque<Block> work = new ArrayDeque<>(assigned.get(t));
+
+            while (!work.isEmpty()) {
+                for (final Block df : work.poll().m_frontier) {
+                    if (!hasPhi.add(df)) {
+                        continue;
+                    }
+
+                    df.phis.add(new Phi(t, df.preds.size()));
+
+                    // The phi assigns the temp too
+                    if (!assigned.get(t).contains(df)) {
+                        work.add(df);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rename every assignment to a new version, and every use to the version
+     * which reaches it (walking the dominator tree)
+     * 
+     * @param b     Block
+     * @param stack Current version of each temp (a temp which hasn't been
+     *              assigned yet is its own version)
+     */
+    private void rename(final Block b, final HashMap<NameOfTemp, ArrayDeque<NameOfTemp>> stack) {
+        // Temps assigned in this block (their versions are popped afterwards)
+        final List<NameOfTemp> pushed = new ArrayList<>();
+
+        final IRCopier copier = new IRCopier() {
+            @Override
+            Exp temp(final TEMP n) {
+                final ArrayDeque<NameOfTemp> versions = stack.get(n.temp);
+                return versions != null && !versions.isEmpty() ? new TEMP(versions.peek()) : n;
+            }
+        };
+
+        for (final Phi phi : b.phis) {
+            phi.dst = newVersion(phi.temp, stack, pushed);
+        }
+
+        for (int i = 0; i < b.stms.size(); i++) {
+            final Stm stm = b.stms.get(i);
+            final TEMP dst = getAssigned(stm);
+
+            if (dst == null) {
+                b.stms.set(i, copier.copy(stm));
+            } else {
+                final Exp src = copier.copy(((MOVE) stm).src);
+                b.stms.set(i, new MOVE(new TEMP(newVersion(dst.temp, stack, pushed)), src));
+            }
+        }
+
+        // Fill in this block's arguments of the successors' phis
+        for (final Block succ : b.succs) {
+            final int j = succ.preds.indexOf(b);
+
+            for (final Phi phi : succ.phis) {
+                final ArrayDeque<NameOfTemp> versions = stack.get(phi.temp);
+                phi.args[j] = versions != null && !versions.isEmpty() ? versions.peek() : phi.temp;
+            }
+        }
+
+        for (final Block child : b.m_children) {
+            rename(child, stack);
+        }
+
+        for (final NameOfTemp t : pushed) {
+            stack.get(t).pop();
+        }
+    }
+
+    /**
+     * Create a new version of a temp, and make it the current one
+     * 
+     * @param t      Temp
+     * @param stack  Current version of each temp
+     * @param pushed (Output) Temps whose version was pushed
+     * @return New version
+     */
+    private NameOfTemp newVersion(final NameOfTemp t,
+            final HashMap<NameOfTemp, ArrayDeque<NameOfTemp>> stack, final List<NameOfTemp> pushed) {
+        final int no = m_numVersions.merge(t, 1, Integer::sum);
+        final NameOfTemp version = new NameOfTemp(t.toString(), Integer.toString(no));
+
+        m_versions.put(version, t);
+        stack.computeIfAbsent(t, k -> new ArrayDeque<>()).push(version);
+        pushed.add(t);
+
+        return version;
+    }
+
+    /**
+     * Convert SSA form to string form
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (final Block b : m_blocks) {
+            for (int i = 0; i < b.stms.size(); i++) {
+                builder.append(b.stms.get(i).toString());
+
+                // Phis go right after the label
+                if (i == 0) {
+                    for (final Phi phi : b.phis) {
+                        builder.append(String.format("%s%n", phi));
+                    }
+                }
+            }
+        }
+
+        return builder.toString();
+    }
+}
@@ -9,9 +9,9 @@ package translate;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import tree.*;
-import main.Logger;
 import main.Util;
 
 /**
@@ -20,8 +20,12 @@ import main.Util;
 public final class TempManager {
     // Current temp unique ID
     private int m_numTemp = 0;
-    // All temps owned by this manager
+    // All temps owned by this manager (by dense index)
     private ArrayList<TEMP> m_children = new ArrayList<>();
+    // Dense index of each owned temp
+    private HashMap<NameOfTemp, Integer> m_indices = new HashMap<>();
+    // Temps holding the function's local variables (by variable name)
+    private HashMap<String, TEMP> m_variables = new HashMap<>();
 
     /**
      * Create unique IR temp with prefix(es)
@@ -29,10 +33,6 @@ public final class TempManager {
      * @param args Prefix tokens
      */
     public TEMP create(final String... args) {
-        if (m_numTemp > 9999) {
-            Logger.addError("Common error: Ran out of unique temps (>9999)");
-        }
-
         // Create unique identifier
         final int no = m_numTemp++;
         final String name = String.format("%s%04d",
@@ -40,7 +40,7 @@ public final class TempManager {
 
         // Track all owned temps for future use
         final TEMP t = new TEMP(name);
-        m_children.add(t);
+        addChild(t);
 
         return t;
     }
@@ -53,39 +53,75 @@ public final class TempManager {
     }
 
     /**
-     * Access all temps owned by this manager
+     * Get the temp holding a local variable, creating it on first use.
+     * The same variable always maps to the same temp.
+     * 
+     * The variable name is closed off with a "$" (which can't appear in an
+     * identifier) before the number, or else "v1" as temp 0 and "v" as temp
+     * 10000 would both be named t$v10000.
+     * 
+     * @param name Variable name
+     */
+    public TEMP variable(final String name) {
+        return m_variables.computeIfAbsent(name, k -> create("t", k, ""));
+    }
+
+    /**
+     * Access all temps owned by this manager (ordered by index)
      */
     public List<TEMP> children() {
         return m_children;
     }
 
     /**
-     * Check if temp is owned by this manager
+     * Get number of temps owned by this manager
      */
-    public boolean isChild(final TEMP t) {
-        final String targetName = t.temp.toString();
+    public int size() {
+        return m_children.size();
+    }
 
-        for (final TEMP child : m_children) {
-            final String childName = child.temp.toString();
-            if (childName.equals(targetName)) {
-                return true;
-            }
-        }
+    /**
+     * Get dense index of a temp owned by this manager.
+     * Indices start at zero, and are never reused.
+     * 
+     * @return Temp index (-1 if not owned)
+     */
+    public int indexOf(final NameOfTemp t) {
+        final Integer index = m_indices.get(t);
+        return index != null ? index : -1;
+    }
 
-        return false;
+    /**
+     * Get temp with the specified index
+     */
+    public NameOfTemp getTemp(final int index) {
+        return m_children.get(index).temp;
+    }
+
+    /**
+     * Check if temp is owned by this manager
+     */
+    public boolean isChild(final TEMP t) {
+        return isChild(t.temp);
     }
 
     /**
      * Check if temp is owned by this manager
      */
     public boolean isChild(final NameOfTemp t) {
-        return isChild(new TEMP(t));
+        return m_indices.containsKey(t);
     }
 
     /**
      * Add child to this manager
      */
     public void addChild(final TEMP t) {
+        // Already owned
+        if (isChild(t)) {
+            return;
+        }
+
+        m_indices.put(t.temp, m_children.size());
         m_children.add(t);
     }
 
@@ -93,7 +129,7 @@ public final class TempManager {
      * Add child to this manager
      */
     public void addChild(final NameOfTemp t) {
-        m_children.add(new TEMP(t));
+        addChild(new TEMP(t));
     }
 
     /**
@@ -102,5 +138,7 @@ public final class TempManager {
     public void reset() {
         m_numTemp = 0;
         m_children.clear();
+        m_indices.clear();
+        m_variables.clear();
     }
 }
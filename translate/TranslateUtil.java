@@ -47,8 +47,13 @@ public final class TranslateUtil {
         for (int i = 0; i < sym.locals.size(); i++) {
             final VarSymbol var = sym.locals.get(i);
 
+            /**
+             * MiniJava has no address-of operator, so locals can never escape
+             * the method. Every local is kept in a temp (instead of a stack
+             * slot), which lets the register allocator put it in a register.
+             */
             if (var.name.equals(name)) {
-                return Arch.get().getLocalAccess(i);
+                return Phase.getCurrTempMgr().variable(var.name);
             }
         }
 
@@ -0,0 +1,206 @@
+/*
+ * Author:  Trevor Schiff, tschiff2020@my.fit.edu
+ * Course:  CSE 4251, Section 01, Spring 2023
+ * Project: MiniJava Compiler Project
+ * Charset: US-ASCII
+ */
+
+package write;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import codegen.CodeFragment;
+
+import assem.*;
+import tree.*;
+
+/**
+ * Assembly file emitter.
+ * 
+ * Instructions are formatted straight into a reusable buffer (exactly like
+ * Instruction.format would), and the buffer is written to the file channel
+ * whenever it fills up. Unlike CodeFragment.toString, no string is built for
+ * the fragment or any of its instructions.
+ * 
+ * The assembly is US-ASCII, so every char is written as a single byte.
+ */
+public final class AsmEmitter implements Closeable {
+    // Size of the output buffer
+    private static final int sc_bufferSize = 64 * 1024;
+    // Column where instruction comments begin
+    private static final int sc_commentColumn = 32;
+    // Width of a tab stop
+    private static final int sc_tabWidth = 8;
+    // Line separator (CodeFragment.toString uses %n)
+    private static final String sc_newLine = System.lineSeparator();
+
+    // Output file
+    private final FileChannel m_channel;
+    // Output buffer
+    private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(sc_bufferSize);
+    // Number of chars written for the current instruction (for tabs/comments)
+    private int m_column = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param path Output file path (created or truncated)
+     */
+    public AsmEmitter(final Path path) throws IOException {
+        m_channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Write character
+     */
+    public AsmEmitter write(final char c) throws IOException {
+        if (!m_buffer.hasRemaining()) {
+            flush();
+        }
+
+        m_buffer.put((byte) c);
+        m_column++;
+        return this;
+    }
+
+    /**
+     * Write string
+     */
+    public AsmEmitter write(final String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+
+        return this;
+    }
+
+    /**
+     * Write code fragment (same text as CodeFragment.toString)
+     * 
+     * @param frag Code fragment
+     */
+    public void writeFragment(final CodeFragment frag) throws IOException {
+        final Map<NameOfTemp, ?> map = frag.map != null ? frag.map : Instruction.DEFAULT_MAP;
+
+        write("! Procedure fragment for ").write(frag.getName()).write(sc_newLine);
+
+        for (final Instruction insn : frag.code) {
+            // Indent code
+            if (!(insn instanceof LabelInstruction)) {
+                write("    ");
+            }
+
+            writeInsn(insn, map);
+            write('\n');
+        }
+
+        write("! End fragment for ").write(frag.getName()).write(sc_newLine);
+    }
+
+    /**
+     * Write instruction (same text as Instruction.format)
+     * 
+     * @param insn Instruction
+     * @param map  Register map
+     */
+    private void writeInsn(final Instruction insn, final Map<NameOfTemp, ?> map)
+            throws IOException {
+        final String assem = insn.assem;
+        m_column = 0;
+
+        for (int i = 0; i < assem.length(); i++) {
+            final char c = assem.charAt(i);
+
+            // Expand tabs to spaces
+            if (c == '\t') {
+                do {
+                    write(' ');
+                } while (m_column % sc_tabWidth != 0);
+
+                continue;
+            }
+
+            if (c != '`') {
+                write(c);
+                continue;
+            }
+
+            // Operand
+            final char kind = assem.charAt(++i);
+            switch (kind) {
+                case 's':
+                    write(String.valueOf(map.get(operand(insn.use(), assem, ++i))));
+                    break;
+                case 'd':
+                    write(String.valueOf(map.get(operand(insn.def(), assem, ++i))));
+                    break;
+                case 'j':
+                    write(operand(insn.jumps(), assem, ++i).toString());
+                    break;
+                case '`':
+                    write('`');
+                    break;
+                default:
+                    throw new IllegalArgumentException("Bad assembly format: " + assem);
+            }
+        }
+
+        if (insn.comment != null) {
+            do {
+                write(' ');
+            } while (m_column < sc_commentColumn);
+
+            write("! ").write(insn.comment);
+        }
+    }
+
+    /**
+     * Get operand referenced by the assembly text
+     * 
+     * @param list  Operands (sources, destinations, or jump targets)
+     * @param assem Assembly text
+     * @param index Index of the operand number in the assembly text
+     */
+    private static <T> T operand(final List<T> list, final String assem, final int index) {
+        final int no = Character.digit(assem.charAt(index), 10);
+
+        if (list == null || no < 0 || no >= list.size()) {
+            throw new IllegalArgumentException("Missing operand for instruction: " + assem);
+        }
+
+        return list.get(no);
+    }
+
+    /**
+     * Write out buffered output
+     */
+    public void flush() throws IOException {
+        m_buffer.flip();
+
+        while (m_buffer.hasRemaining()) {
+            m_channel.write(m_buffer);
+        }
+
+        m_buffer.clear();
+    }
+
+    /**
+     * Write out buffered output, and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            m_channel.close();
+        }
+    }
+}
@@ -7,10 +7,18 @@
 
 package write;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
+import main.CompilationContext;
 import main.Logger;
+import main.Metrics;
+import main.Util;
+import check.ClassSymbol;
+import check.MethodSymbol;
 import codegen.CodeFragment;
 
 /**
@@ -28,35 +36,156 @@ public final class Phase {
      * Perform write phase of the compiler.
      * Write the generated assembly to an output file.
      * 
-     * @param fileName Assembly file name
+     * @param ctx Compilation context
      * @return Success
      */
-    public static boolean execute(final String fileName) {
+    public static boolean execute(final CompilationContext ctx) {
         // Reset state (in case phase is being run again)
         initialize();
 
         // Write assembly to output file
+        final AsmEmitter emitter = open(ctx);
+
+        if (emitter == null) {
+            return false;
+        }
+
+        for (final CodeFragment frag : ctx.getCodeFragments()) {
+            if (!writeFragment(ctx, emitter, frag)) {
+                close(ctx, emitter, false);
+                return false;
+            }
+        }
+
+        return close(ctx, emitter, true);
+    }
+
+    /**
+     * Begin writing the assembly file.
+     * 
+     * The code is written to a temporary file first, which replaces the
+     * assembly file when it is closed (so a failed compilation never leaves
+     * a half-written assembly file behind).
+     * 
+     * @param ctx Compilation context
+     * @return Assembly emitter (null if error)
+     */
+    public static AsmEmitter open(final CompilationContext ctx) {
+        final String fileName = getTempPath(ctx);
+
         try {
-            final FileWriter writer = new FileWriter(fileName);
+            final AsmEmitter emitter = new AsmEmitter(Paths.get(fileName));
+
+            emitter.write("! Compiler phase 12 by Trevor Schiff.\n");
+            emitter.write("\n");
 
-            writer.write("! Compiler phase 12 by Trevor Schiff.\n");
-            writer.write("\n");
+            emitter.write(".global start\n");
+            emitter.write("start:\n");
+            emitter.write("\n");
 
-            writer.write(".global start\n");
-            writer.write("start:\n");
-            writer.write("\n");
+            return emitter;
+        } catch (final IOException e) {
+            Logger.addError("Write error: Unable to create assembly file for writing: %s", fileName);
+            return null;
+        }
+    }
 
-            for (CodeFragment frag : codegen.Phase.getCodeFragments()) {
-                writer.write(frag.toString());
-                writer.write("\n");
+    /**
+     * Write code fragment to the assembly file
+     * 
+     * @param ctx     Compilation context
+     * @param emitter Assembly emitter
+     * @param frag    Code fragment
+     * @return Success
+     */
+    public static boolean writeFragment(final CompilationContext ctx, final AsmEmitter emitter,
+            final CodeFragment frag) {
+        Metrics.begin("Write");
+
+        try {
+            emitter.writeFragment(frag);
+            emitter.write("\n");
+        } catch (final IOException e) {
+            Logger.addError("Write error: Unable to write assembly file: %s", getTempPath(ctx));
+            return false;
+        } finally {
+            Metrics.end(frag.getName());
+        }
+
+        return true;
+    }
+
+    /**
+     * Finish writing the assembly file
+     * 
+     * @param ctx     Compilation context
+     * @param emitter Assembly emitter
+     * @param keep    Whether to keep the code (otherwise it is thrown away)
+     * @return Success
+     */
+    public static boolean close(final CompilationContext ctx, final AsmEmitter emitter,
+            final boolean keep) {
+        final Path temp = Paths.get(getTempPath(ctx));
+
+        try {
+            if (keep) {
+                writeVtables(ctx, emitter);
             }
 
-            writer.close();
+            emitter.close();
+
+            if (keep) {
+                Files.move(temp, Paths.get(ctx.getAsmFilePath()), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(temp);
+            }
         } catch (final IOException e) {
-            Logger.addError("Write error: Unable to create assembly file for writing: %s", fileName);
+            Logger.addError("Write error: Unable to write assembly file: %s", ctx.getAsmFilePath());
             return false;
         }
 
         return true;
     }
-}
+
+    /**
+     * Write the vtable of every class with dynamic dispatch to the data section
+     * (one word per slot, holding the address of the method)
+     * 
+     * @param ctx     Compilation context
+     * @param emitter Assembly emitter
+     */
+    private static void writeVtables(final CompilationContext ctx, final AsmEmitter emitter)
+            throws IOException {
+        boolean first = true;
+
+        for (final ClassSymbol cs : ctx.getSymbolTable().getClasses()) {
+            if (!cs.hasVtable()) {
+                continue;
+            }
+
+            // Data section begins before the first vtable
+            if (first) {
+                emitter.write(".section \".data\"\n");
+                emitter.write(".align 4\n");
+                first = false;
+            }
+
+            emitter.write(cs.getVtableLabel()).write(":\n");
+
+            for (final MethodSymbol ms : cs.getVtable()) {
+                emitter.write("    .word ")
+                        .write(Util.concatNames(ms.parent.name, ms.name))
+                        .write("\n");
+            }
+
+            emitter.write("\n");
+        }
+    }
+
+    /**
+     * Get path of the temporary assembly file
+     */
+    private static String getTempPath(final CompilationContext ctx) {
+        return ctx.getAsmFilePath() + ".tmp";
+    }
+}
\ No newline at end of file